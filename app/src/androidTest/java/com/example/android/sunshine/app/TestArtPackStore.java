@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    Checks that art is stored under the hash of its bytes, and that damaged art is turned away.
+ */
+public class TestArtPackStore extends AndroidTestCase {
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(mContext.getCacheDir(), "test_art");
+        deleteDirectory();
+        assertTrue(mDirectory.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    public void testStoredByContent() throws IOException {
+        byte[] red = createPng(Color.RED);
+        ArtPackStore.Entry entry = store(red, red.length);
+        assertNotNull("Error: A whole image wasn't stored", entry);
+        assertEquals(64, entry.hash.length());
+        assertEquals(red.length, entry.length);
+
+        File file = new File(mDirectory, entry.hash);
+        assertTrue("Error: The image isn't stored under its hash", file.isFile());
+        assertTrue(ArtPackStore.isIntact(file, entry));
+
+        // The same bytes from another url go in the same file
+        ArtPackStore.Entry again = store(red, -1);
+        assertEquals(entry.hash, again.hash);
+        assertEquals(1, mDirectory.list().length);
+
+        // And different bytes go in another
+        byte[] blue = createPng(Color.BLUE);
+        assertFalse(entry.hash.equals(store(blue, blue.length).hash));
+        assertEquals(2, mDirectory.list().length);
+    }
+
+    public void testDamagedImagesRejected() throws IOException {
+        byte[] red = createPng(Color.RED);
+        assertNull("Error: A cut short download was stored",
+                store(Arrays.copyOf(red, red.length / 2), red.length));
+        assertNull("Error: Something other than an image was stored",
+                store("<html>Not found</html>".getBytes("UTF-8"), -1));
+        assertEquals("Error: Rejected downloads were left behind", 0, mDirectory.list().length);
+    }
+
+    public void testDamagedFileNotIntact() throws IOException {
+        byte[] red = createPng(Color.RED);
+        ArtPackStore.Entry entry = store(red, red.length);
+        File file = new File(mDirectory, entry.hash);
+
+        // Same length, different bytes
+        byte[] damaged = red.clone();
+        damaged[damaged.length - 1] ^= 0xff;
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(damaged);
+        out.close();
+        // Only hashing catches this; the check made on every sync doesn't
+        assertTrue(ArtPackStore.hasLength(file, entry));
+        assertFalse(ArtPackStore.isIntact(file, entry));
+
+        assertTrue(file.delete());
+        assertFalse(ArtPackStore.hasLength(file, entry));
+        assertFalse(ArtPackStore.isIntact(file, entry));
+    }
+
+    private ArtPackStore.Entry store(byte[] bytes, long expectedLength) throws IOException {
+        return ArtPackStore.store(mDirectory, new ByteArrayInputStream(bytes), expectedLength);
+    }
+
+    private static byte[] createPng(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.util.ListUpdateCallback;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that a reload of the forecast list only touches the rows that changed.
+ */
+public class TestForecastRowDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int DAYS = 14;
+
+    public void testNothingChanged() {
+        assertEquals(new ArrayList<String>(),
+                diff(createRows(0, DAYS, -1), createRows(0, DAYS, -1)));
+    }
+
+    public void testOneDayChanged() {
+        assertEquals(Arrays.asList("changed 5 1"),
+                diff(createRows(0, DAYS, -1), createRows(0, DAYS, 5)));
+    }
+
+    public void testDaysAddedAndDropped() {
+        // Yesterday drops off the top, and another day is added to the end.  DiffUtil reports
+        // from the end of the list backwards, so the insertion is at the end of the old list.
+        assertEquals(Arrays.asList("inserted " + DAYS + " 1", "removed 0 1"),
+                diff(createRows(-1, DAYS, -1), createRows(0, DAYS, -1)));
+    }
+
+    private List<String> diff(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        final List<String> updates = new ArrayList<>();
+        ForecastLoader.diff(oldRows, newRows).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add("inserted " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add("removed " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("moved " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                updates.add("changed " + position + " " + count);
+            }
+        });
+        return updates;
+    }
+
+    /*
+        Rows for days from firstDay (relative to today) on, with the row at warmerRow a degree
+        warmer than the rest.
+     */
+    private ForecastRow[] createRows(int firstDay, int days, int warmerRow) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                WeatherContract.WeatherEntry._ID,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG
+        });
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < days; i++) {
+            int day = firstDay + i;
+            double high = (i == warmerRow ? 21.0 : 20.0) + day;
+            cursor.addRow(new Object[]{day, today + day * DAY_IN_MILLIS, "Clear",
+                    high, 10.0 + day, "94043", 800, 37.4, -122.1});
+        }
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+}
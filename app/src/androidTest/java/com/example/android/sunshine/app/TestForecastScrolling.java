@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.Benchmarks;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/*
+    Flings the forecast list through two years of days, with as many again stored for a few
+    other locations, and logs how long the frames took; compare them across builds on the same
+    device.  Storing all those rows takes a while, so none of it happens unless benchmarks are
+    asked for.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastScrolling {
+
+    public static final String LOG_TAG = TestForecastScrolling.class.getSimpleName();
+
+    private static final String[] LOCATIONS = {
+            "scroll_test_0", "scroll_test_1", "scroll_test_2", "scroll_test_3"
+    };
+    private static final int DAYS = 2 * 365;
+    private static final int FLINGS = 10;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // A frame slower than this missed a 60Hz vsync
+    private static final long FRAME_NANOS = 1000000000L / 60;
+
+    private final long[] mLocationIds = new long[LOCATIONS.length];
+    private String mLocationKey;
+    private String mSavedLocation;
+
+    private long[] mFrameNanos = new long[4096];
+    private int mFrames;
+    private long mLastFrameTimeNanos;
+    private boolean mRecording;
+
+    // Launched by the test, once the rows are stored
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    @BeforeClass
+    public static void onlyWhenAskedFor() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < LOCATIONS.length; i++) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATIONS[i]);
+            location.put(LocationEntry.COLUMN_CITY_NAME, "Scroll Test");
+            location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+            location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+            Uri locationUri = context.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+            mLocationIds[i] = ContentUris.parseId(locationUri);
+
+            ContentValues[] days = new ContentValues[DAYS];
+            for (int day = 0; day < DAYS; day++) {
+                days[day] = createWeatherValues(mLocationIds[i], today + day * DAY_IN_MILLIS, day);
+            }
+            context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+        }
+
+        // Show the first of them
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mSavedLocation = prefs.getString(mLocationKey, null);
+        prefs.edit().putString(mLocationKey, LOCATIONS[0]).commit();
+    }
+
+    @After
+    public void tearDown() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        for (long locationId : mLocationIds) {
+            context.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationId)});
+            context.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                    LocationEntry._ID + " = ?", new String[]{Long.toString(locationId)});
+        }
+
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(context).edit();
+        if (null == mSavedLocation) {
+            editor.remove(mLocationKey);
+        } else {
+            editor.putString(mLocationKey, mSavedLocation);
+        }
+        editor.commit();
+    }
+
+    @Test
+    public void testLogFlingFrameTimes() throws Throwable {
+        final RecyclerView recyclerView = (RecyclerView) mActivityRule.launchActivity(null)
+                .findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getAdapter().getItemCount() >= DAYS;
+            }
+        }.run();
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mRecording = true;
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            }
+        });
+
+        for (int i = 0; i < FLINGS; i++) {
+            // Down through the history, then back up again
+            final int velocity = (i % 2 == 0 ? 1 : -1) * recyclerView.getMaxFlingVelocity();
+            mActivityRule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.fling(0, velocity);
+                }
+            });
+            new PollingCheck(10000) {
+                @Override
+                protected boolean check() {
+                    return RecyclerView.SCROLL_STATE_IDLE == recyclerView.getScrollState();
+                }
+            }.run();
+        }
+
+        mActivityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mRecording = false;
+            }
+        });
+
+        assertTrue("Error: No frames were drawn", mFrames > 0);
+        long[] frames = Arrays.copyOf(mFrameNanos, mFrames);
+        Arrays.sort(frames);
+        long total = 0;
+        int janky = 0;
+        for (long frame : frames) {
+            total += frame;
+            if (frame > FRAME_NANOS) {
+                janky++;
+            }
+        }
+        Log.i(LOG_TAG, mFrames + " frames: mean " + total / mFrames / 1000 + "us, 90th "
+                + frames[mFrames * 9 / 10] / 1000 + "us, 99th "
+                + frames[mFrames * 99 / 100] / 1000 + "us, " + janky + " over "
+                + FRAME_NANOS / 1000 + "us");
+    }
+
+    // Records the time between consecutive frames, on the main thread
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRecording) {
+                return;
+            }
+            if (0 != mLastFrameTimeNanos) {
+                if (mFrames == mFrameNanos.length) {
+                    mFrameNanos = Arrays.copyOf(mFrameNanos, mFrames * 2);
+                }
+                mFrameNanos[mFrames++] = frameTimeNanos - mLastFrameTimeNanos;
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private static ContentValues createWeatherValues(long locationId, long date, int day) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + day % 10);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + day % 10);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        // Walk through the conditions so rows differ
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, day % 2 == 0 ? 800 : 500);
+        return values;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TestFriendlyDayFormatter {
+
+    public static final String LOG_TAG = TestFriendlyDayFormatter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // Far enough either side of today to reach every branch
+    private static final int FIRST_DAY = -3;
+    private static final int LAST_DAY = 20;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void testMatchesFormatting() {
+        for (int day = FIRST_DAY; day <= LAST_DAY; day++) {
+            long date = dateFromToday(day);
+            assertEquals("Friendly day " + day, legacyFriendlyDayString(mContext, date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals("Long friendly day " + day, legacyFriendlyDayString(mContext, date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals("Full friendly day " + day, legacyFullFriendlyDayString(mContext, date),
+                    Utility.getFullFriendlyDayString(mContext, date));
+            assertEquals("Day name " + day, legacyDayName(mContext, date),
+                    Utility.getDayName(mContext, date));
+            assertEquals("Month day " + day, legacyMonthDay(date),
+                    Utility.getFormattedMonthDay(mContext, date));
+        }
+    }
+
+    @Test
+    public void testSameDaySameString() {
+        long date = dateFromToday(9);
+        String friendlyDay = Utility.getFriendlyDayString(mContext, date, false);
+        assertSame("Error: Day wasn't cached", friendlyDay,
+                Utility.getFriendlyDayString(mContext, date, false));
+        // Any time on the same day
+        assertSame("Error: Day cached by time rather than by day", friendlyDay,
+                Utility.getFriendlyDayString(mContext, date + 60 * 60 * 1000L, false));
+    }
+
+    // The per row cost of the friendly day string when it was formatted from scratch, and now
+    @Test
+    public void testLogFriendlyDayCost() {
+        Benchmarks.assumeEnabled();
+        final int calls = 2000;
+        int sink = 0;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < calls; i++) {
+            sink += legacyFriendlyDayString(mContext, dateFromToday(i % 14), 0 == i % 14).length();
+        }
+        long legacyNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < calls; i++) {
+            sink -= Utility.getFriendlyDayString(mContext, dateFromToday(i % 14), 0 == i % 14)
+                    .length();
+        }
+        long cachedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertEquals(0, sink);
+        Log.i(LOG_TAG, "friendly day: formatted " + legacyNanos / calls + "ns/row, cached "
+                + cachedNanos / calls + "ns/row");
+    }
+
+    /*
+        Midday, so that the day doesn't depend on whether a daylight saving change falls between
+        now and then.
+     */
+    private static long dateFromToday(int days) {
+        return WeatherContract.normalizeDate(System.currentTimeMillis())
+                + days * DAY_IN_MILLIS + DAY_IN_MILLIS / 2;
+    }
+
+    // The formatting as Utility did it before the cache
+
+    private static String legacyFriendlyDayString(Context context, long dateInMillis,
+                                                  boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today), legacyMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return legacyDayName(context, dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFullFriendlyDayString(Context context, long dateInMillis) {
+        return context.getString(R.string.format_full_friendly_date,
+                legacyDayName(context, dateInMillis), legacyMonthDay(dateInMillis));
+    }
+
+    private static String legacyDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
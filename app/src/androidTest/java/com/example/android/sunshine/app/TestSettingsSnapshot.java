@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.Benchmarks;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TestSettingsSnapshot {
+
+    public static final String LOG_TAG = TestSettingsSnapshot.class.getSimpleName();
+
+    private static final int ROWS = 14;
+    private static final int BINDS = 2000;
+
+    private Context mContext;
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @After
+    public void tearDown() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (null == mSavedUnits) {
+            editor.remove(mUnitsKey);
+        } else {
+            editor.putString(mUnitsKey, mSavedUnits);
+        }
+        editor.commit();
+    }
+
+    @Test
+    public void testMatchesPreferences() {
+        assertEquals(legacyIsMetric(mContext), Utility.isMetric(mContext));
+        assertEquals(legacyUsingLocalGraphics(mContext), Utility.usingLocalGraphics(mContext));
+        assertEquals(mPrefs.getString(mContext.getString(R.string.pref_location_key),
+                        mContext.getString(R.string.pref_location_default)),
+                Utility.getPreferredLocation(mContext));
+        assertEquals(mPrefs.contains(mContext.getString(R.string.pref_location_latitude))
+                        && mPrefs.contains(mContext.getString(R.string.pref_location_longitude)),
+                Utility.isLocationLatLonAvailable(mContext));
+    }
+
+    @Test
+    public void testFollowsChanges() {
+        final boolean wasMetric = Utility.isMetric(mContext);
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(wasMetric
+                ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+
+        // Committed off the main thread, so the snapshot catches up once the main thread has run
+        // the listeners
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) != wasMetric;
+            }
+        }.run();
+        assertEquals(legacyIsMetric(mContext), Utility.isMetric(mContext));
+    }
+
+    /*
+        What a forecast row costs to bind, and what the preference reads that binding used to do
+        cost on their own.
+     */
+    @Test
+    public void testLogBindCost() throws Exception {
+        Benchmarks.assumeEnabled();
+        final Context context = new ContextThemeWrapper(mContext, R.style.AppTheme_Main);
+        final long[] bindNanos = new long[1];
+        final CountDownLatch bound = new CountDownLatch(1);
+
+        // Views belong on the main thread
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                ForecastAdapter adapter = new ForecastAdapter(context, Glide.with(context),
+                        new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                            @Override
+                            public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                            }
+                        }, new View(context), AbsListView.CHOICE_MODE_NONE);
+                adapter.swapCursor(createForecastCursor());
+
+                ForecastAdapter.ForecastAdapterViewHolder today =
+                        adapter.onCreateViewHolder(recyclerView, adapter.getItemViewType(0));
+                ForecastAdapter.ForecastAdapterViewHolder future =
+                        adapter.onCreateViewHolder(recyclerView, adapter.getItemViewType(1));
+
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (int i = 0; i < BINDS; i++) {
+                    int position = i % ROWS;
+                    adapter.onBindViewHolder(0 == position ? today : future, position);
+                }
+                bindNanos[0] = SystemClock.elapsedRealtimeNanos() - start;
+                bound.countDown();
+            }
+        });
+        assertTrue("Error: Binding timed out", bound.await(30, TimeUnit.SECONDS));
+
+        // What each bind used to spend reading preferences: the art pack, and the units for both
+        // temperatures
+        boolean sink = false;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BINDS; i++) {
+            sink ^= legacyUsingLocalGraphics(mContext);
+            sink ^= legacyIsMetric(mContext);
+            sink ^= legacyIsMetric(mContext);
+        }
+        long legacyNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BINDS; i++) {
+            sink ^= Utility.usingLocalGraphics(mContext);
+            sink ^= Utility.isMetric(mContext);
+            sink ^= Utility.isMetric(mContext);
+        }
+        long snapshotNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(LOG_TAG, "bind: " + bindNanos[0] / BINDS + "ns/row; settings reads per row: "
+                + "preferences " + legacyNanos / BINDS + "ns, snapshot "
+                + snapshotNanos / BINDS + "ns (" + sink + ")");
+    }
+
+    private static MatrixCursor createForecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                WeatherContract.WeatherEntry._ID,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG
+        });
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[]{i, today + i * 24 * 60 * 60 * 1000L, "Clear",
+                    20.0 + i, 10.0 + i, "94043", 800, 37.4, -122.1});
+        }
+        return cursor;
+    }
+
+    // The settings reads as Utility did them before the snapshot
+
+    private static boolean legacyIsMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static boolean legacyUsingLocalGraphics(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+    }
+}
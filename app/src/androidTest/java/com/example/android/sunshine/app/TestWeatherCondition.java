@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/*
+    Checks the WeatherCondition table behind the Utility condition helpers against the range
+    chains it replaced, for every possible three digit condition id and either side of them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherCondition {
+
+    public static final String LOG_TAG = TestWeatherCondition.class.getSimpleName();
+
+    private static final int FIRST_ID = -1;
+    private static final int LAST_ID = 1000;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void testIconResource() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Icon for " + id, legacyIconResource(id),
+                    Utility.getIconResourceForWeatherCondition(id));
+        }
+    }
+
+    @Test
+    public void testArtResource() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Art for " + id, legacyArtResource(id),
+                    Utility.getArtResourceForWeatherCondition(id));
+        }
+    }
+
+    @Test
+    public void testArtUrl() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            // Any art the sync has stored is served from the stored copy instead
+            String legacyArtUrl = legacyArtUrl(mContext, id);
+            assertEquals("Art url for " + id,
+                    null == legacyArtUrl ? null : ArtPackStore.getLocalUrl(mContext, legacyArtUrl),
+                    Utility.getArtUrlForWeatherCondition(mContext, id));
+        }
+    }
+
+    @Test
+    public void testImageUrl() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Image url for " + id, legacyImageUrl(id),
+                    Utility.getImageUrlForWeatherCondition(id));
+        }
+    }
+
+    @Test
+    public void testString() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("String for " + id, legacyString(mContext, id),
+                    Utility.getStringForWeatherCondition(mContext, id));
+        }
+    }
+
+    // The art ForecastArt preloads is exactly the art any condition can show
+    @Test
+    public void testArtNames() {
+        Set<String> shown = new HashSet<>();
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            WeatherCondition condition = WeatherCondition.forId(id);
+            if (null != condition && null != condition.artName) {
+                shown.add(condition.artName);
+            }
+        }
+        assertEquals(shown, WeatherCondition.getArtNames());
+    }
+
+    // What binding a row's icon and art costs each way, over every id
+    @Test
+    public void testLogLookupCost() {
+        Benchmarks.assumeEnabled();
+        final int rounds = 200;
+        int sink = 0;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int round = 0; round < rounds; round++) {
+            for (int id = 0; id <= 999; id++) {
+                sink += legacyIconResource(id) + legacyArtResource(id);
+            }
+        }
+        long legacyNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int round = 0; round < rounds; round++) {
+            for (int id = 0; id <= 999; id++) {
+                sink -= Utility.getIconResourceForWeatherCondition(id)
+                        + Utility.getArtResourceForWeatherCondition(id);
+            }
+        }
+        long tableNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertEquals(0, sink);
+        int lookups = rounds * 1000;
+        Log.i(LOG_TAG, "icon + art lookup: chains " + legacyNanos / lookups + "ns, table "
+                + tableNanos / lookups + "ns");
+    }
+
+    // The helpers as they were before the table
+
+    private static int legacyIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtUrl(Context context, int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+
+    // Condition ids that had a case of their own in the old switch, and their strings
+    private static final int[][] LEGACY_STRINGS = {
+            {500, R.string.condition_500}, {501, R.string.condition_501},
+            {502, R.string.condition_502}, {503, R.string.condition_503},
+            {504, R.string.condition_504}, {511, R.string.condition_511},
+            {520, R.string.condition_520}, {531, R.string.condition_531},
+            {600, R.string.condition_600}, {601, R.string.condition_601},
+            {602, R.string.condition_602}, {611, R.string.condition_611},
+            {612, R.string.condition_612}, {615, R.string.condition_615},
+            {616, R.string.condition_616}, {620, R.string.condition_620},
+            {621, R.string.condition_621}, {622, R.string.condition_622},
+            {701, R.string.condition_701}, {711, R.string.condition_711},
+            {721, R.string.condition_721}, {731, R.string.condition_731},
+            {741, R.string.condition_741}, {751, R.string.condition_751},
+            {761, R.string.condition_761}, {762, R.string.condition_762},
+            {771, R.string.condition_771}, {781, R.string.condition_781},
+            {800, R.string.condition_800}, {801, R.string.condition_801},
+            {802, R.string.condition_802}, {803, R.string.condition_803},
+            {804, R.string.condition_804}, {900, R.string.condition_900},
+            {901, R.string.condition_901}, {902, R.string.condition_902},
+            {903, R.string.condition_903}, {904, R.string.condition_904},
+            {905, R.string.condition_905}, {906, R.string.condition_906},
+            {951, R.string.condition_951}, {952, R.string.condition_952},
+            {953, R.string.condition_953}, {954, R.string.condition_954},
+            {955, R.string.condition_955}, {956, R.string.condition_956},
+            {957, R.string.condition_957}, {958, R.string.condition_958},
+            {959, R.string.condition_959}, {960, R.string.condition_960},
+            {961, R.string.condition_961}, {962, R.string.condition_962}
+    };
+
+    private static String legacyString(Context context, int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return context.getString(R.string.condition_2xx);
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return context.getString(R.string.condition_3xx);
+        }
+        for (int[] legacyString : LEGACY_STRINGS) {
+            if (legacyString[0] == weatherId) {
+                return context.getString(legacyString[1]);
+            }
+        }
+        return context.getString(R.string.condition_unknown, weatherId);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Compares the rows per second of the WeatherWriter path used by WeatherProvider.bulkInsert
+    with the SQLiteDatabase.insert path it replaced, for a 14 day forecast, a 16 day forecast
+    and a few years of history.  The numbers are logged under this class's tag.  A benchmark,
+    so it only runs when asked for; see Benchmarks.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBulkInsertPerformance {
+
+    public static final String LOG_TAG = TestBulkInsertPerformance.class.getSimpleName();
+
+    private static final int[] BATCH_SIZES = {14, 16, 3 * 365};
+    // Each batch is repeated so the 14 and 16 day timings aren't all noise
+    private static final int REPETITIONS = 20;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+
+    @BeforeClass
+    public static void onlyWhenAskedFor() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(context);
+        mDb = mDbHelper.getWritableDatabase();
+        mLocationRowId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void testBulkInsertPerformance() {
+        for (int batchSize : BATCH_SIZES) {
+            long databaseInsertNanos = 0;
+            long writerNanos = 0;
+            for (int i = 0; i < REPETITIONS; i++) {
+                databaseInsertNanos += timeDatabaseInsert(createValues(batchSize));
+                assertEquals(batchSize, countWeather());
+                clearWeather();
+
+                writerNanos += timeWriter(createValues(batchSize));
+                assertEquals(batchSize, countWeather());
+                clearWeather();
+            }
+            long rows = (long) batchSize * REPETITIONS;
+            Log.i(LOG_TAG, batchSize + " rows: SQLiteDatabase.insert "
+                    + rowsPerSecond(rows, databaseInsertNanos) + " rows/s, WeatherWriter "
+                    + rowsPerSecond(rows, writerNanos) + " rows/s");
+        }
+    }
+
+    // The way bulkInsert used to do it: a Time and a freshly prepared INSERT per row
+    private long timeDatabaseInsert(ContentValues[] values) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        mDb.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                long dateValue = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                value.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        WeatherContract.normalizeDate(dateValue));
+                mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private long timeWriter(ContentValues[] values) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        mDb.beginTransaction();
+        try {
+            WeatherWriter writer = new WeatherWriter(mDb);
+            try {
+                for (ContentValues value : values) {
+                    writer.insert(value);
+                }
+            } finally {
+                writer.close();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private ContentValues[] createValues(int days) {
+        long millisecondsInADay = 1000*60*60*24;
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationRowId);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + millisecondsInADay * i);
+        }
+        return values;
+    }
+
+    private long countWeather() {
+        return DatabaseUtils.queryNumEntries(mDb, WeatherContract.WeatherEntry.TABLE_NAME);
+    }
+
+    private void clearWeather() {
+        mDb.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+    }
+
+    private static long rowsPerSecond(long rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1000000000L / nanos;
+    }
+}
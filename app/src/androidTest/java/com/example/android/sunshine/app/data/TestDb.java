@@ -16,8 +16,10 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
+import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
 import android.test.AndroidTestCase;
 
 import java.util.HashSet;
@@ -234,4 +236,114 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        Runs EXPLAIN QUERY PLAN over the queries the provider makes for each of its routes and
+        fails if any of them has to read a whole table.  The WEATHER and LOCATION routes take
+        their selection from the caller, so those use the selections the app actually makes.
+     */
+    public void testQueryPlans() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String weatherByDate = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        // Every route the provider matches must be covered below
+        final HashSet<Integer> routes = new HashSet<Integer>();
+        routes.add(WeatherProvider.WEATHER);
+        routes.add(WeatherProvider.WEATHER_WITH_LOCATION);
+        routes.add(WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        routes.add(WeatherProvider.LOCATION);
+
+        Uri[] uris = {
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                WeatherContract.LocationEntry.CONTENT_URI
+        };
+
+        UriMatcher matcher = WeatherProvider.buildUriMatcher();
+        for (Uri uri : uris) {
+            int match = matcher.match(uri);
+            routes.remove(match);
+            switch (match) {
+                case WeatherProvider.WEATHER:
+                    // replaceForecast's prune of old days: the days it's about to drop, then
+                    // the drop itself
+                    String pruneSelection = WeatherContract.WeatherEntry.COLUMN_DATE + " < ?";
+                    String[] pruneSelectionArgs = {Long.toString(TestUtilities.TEST_DATE)};
+                    assertNoFullScan(db, uri.toString(), "SELECT " +
+                                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                                    WeatherContract.WeatherEntry.COLUMN_DATE + " FROM " +
+                                    WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                                    pruneSelection,
+                            pruneSelectionArgs);
+                    assertNoFullScan(db, uri.toString(), "DELETE FROM " +
+                                    WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                                    pruneSelection,
+                            pruneSelectionArgs);
+                    // and its update of each day it's given; the values don't change the plan
+                    assertNoFullScan(db, uri.toString(), WeatherWriter.SQL_UPDATE_IF_CHANGED,
+                            null);
+                    break;
+                case WeatherProvider.WEATHER_WITH_LOCATION:
+                    assertNoFullScan(db, uri.toString(),
+                            WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                                    WeatherProvider.sLocationSettingSelection, null, null,
+                                    weatherByDate, null),
+                            new String[]{TestUtilities.TEST_LOCATION});
+                    assertNoFullScan(db, uri.toString(),
+                            WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                                    WeatherProvider.sLocationSettingWithStartDateSelection, null,
+                                    null, weatherByDate, null),
+                            new String[]{TestUtilities.TEST_LOCATION,
+                                    Long.toString(TestUtilities.TEST_DATE)});
+                    break;
+                case WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE:
+                    assertNoFullScan(db, uri.toString(),
+                            WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                                    WeatherProvider.sLocationSettingAndDaySelection, null, null,
+                                    null, null),
+                            new String[]{TestUtilities.TEST_LOCATION,
+                                    Long.toString(TestUtilities.TEST_DATE)});
+                    break;
+                case WeatherProvider.LOCATION:
+                    // the sync adapter's lookup of a location's row id
+                    assertNoFullScan(db, uri.toString(), "SELECT " +
+                                    WeatherContract.LocationEntry._ID + " FROM " +
+                                    WeatherContract.LocationEntry.TABLE_NAME + " WHERE " +
+                                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                            new String[]{TestUtilities.TEST_LOCATION});
+                    // and its list of saved locations, which may walk the index but not the table
+                    assertNoFullScan(db, uri.toString(), "SELECT " +
+                                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING +
+                                    " FROM " + WeatherContract.LocationEntry.TABLE_NAME,
+                            null);
+                    break;
+                default:
+                    fail("Error: No query plan check for " + uri);
+            }
+        }
+        assertTrue("Error: Some provider routes have no query plan check: " + routes,
+                routes.isEmpty());
+        dbHelper.close();
+    }
+
+    private static void assertNoFullScan(SQLiteDatabase db, String route, String sql,
+                                         String[] selectionArgs) {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        int detailIndex = plan.getColumnIndex("detail");
+        try {
+            assertTrue("Error: No query plan for " + sql, plan.moveToFirst());
+            do {
+                String detail = plan.getString(detailIndex);
+                // Older SQLite says "SCAN TABLE weather", newer just "SCAN weather"; either is
+                // fine as long as it's walking an index rather than the table itself.
+                assertFalse("Error: Full table scan for " + route + ": " + detail + " in " + sql,
+                        detail.startsWith("SCAN ") && !detail.contains(" INDEX "));
+            } while (plan.moveToNext());
+        } finally {
+            plan.close();
+        }
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Opens a database as it was created by every earlier DATABASE_VERSION and checks that
+    WeatherDbHelper brings it up to date, keeping the data wherever it says it can.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    // Roughly a month of history plus a forecast, for a handful of saved locations
+    private static final int LOCATIONS = 5;
+    private static final int DAYS = 45;
+
+    /*
+        The schema each version shipped with, frozen.  These must never change once released;
+        when DATABASE_VERSION is bumped, add the outgoing version's schema here.
+     */
+    private static final String[] VERSION_2_SCHEMA = {
+            "CREATE TABLE location (" +
+                    "_id INTEGER PRIMARY KEY," +
+                    "location_setting TEXT UNIQUE NOT NULL, " +
+                    "city_name TEXT NOT NULL, " +
+                    "coord_lat REAL NOT NULL, " +
+                    "coord_long REAL NOT NULL  );",
+            "CREATE TABLE weather (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "location_id INTEGER NOT NULL, " +
+                    "date INTEGER NOT NULL, " +
+                    "short_desc TEXT NOT NULL, " +
+                    "weather_id INTEGER NOT NULL," +
+                    "min REAL NOT NULL, " +
+                    "max REAL NOT NULL, " +
+                    "humidity REAL NOT NULL, " +
+                    "pressure REAL NOT NULL, " +
+                    "wind REAL NOT NULL, " +
+                    "degrees REAL NOT NULL, " +
+                    " FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+                    "UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+
+    void deleteTheDatabase() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void setUp() {
+        deleteTheDatabase();
+    }
+
+    public void testUpgradeFromEveryVersion() {
+        for (int version = 1; version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            deleteTheDatabase();
+            SQLiteDatabase old = SQLiteDatabase.openOrCreateDatabase(
+                    mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+            boolean keepsData = version >= WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+            if (keepsData) {
+                createSchema(old, version);
+                insertRows(old);
+            } else {
+                // Too old to migrate; all that matters is that whatever is there gets replaced.
+                old.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY, date TEXT)");
+                old.execSQL("INSERT INTO weather (date) VALUES ('20141205')");
+            }
+            old.setVersion(version);
+            old.close();
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            long start = SystemClock.elapsedRealtime();
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            Log.i(LOG_TAG, "Upgrading version " + version + " took " +
+                    (SystemClock.elapsedRealtime() - start) + "ms");
+
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertTrue("Error: Version " + version + " is missing the location and date index",
+                    hasIndex(db, WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+            if (keepsData) {
+                assertEquals("Error: Upgrading version " + version + " lost locations",
+                        LOCATIONS, DatabaseUtils.queryNumEntries(db,
+                                WeatherContract.LocationEntry.TABLE_NAME));
+                assertEquals("Error: Upgrading version " + version + " lost weather",
+                        LOCATIONS * DAYS, DatabaseUtils.queryNumEntries(db,
+                                WeatherContract.WeatherEntry.TABLE_NAME));
+            } else {
+                assertEquals("Error: Version " + version + " wasn't rebuilt",
+                        0, DatabaseUtils.queryNumEntries(db,
+                                WeatherContract.WeatherEntry.TABLE_NAME));
+            }
+
+            // and the upgraded database still takes the rows we write now
+            long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            assertTrue(locationRowId != -1);
+            assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                    TestUtilities.createWeatherValues(locationRowId)) != -1);
+            dbHelper.close();
+        }
+    }
+
+    private static void createSchema(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                for (String sql : VERSION_2_SCHEMA) {
+                    db.execSQL(sql);
+                }
+                break;
+            default:
+                fail("Error: No frozen schema for database version " + version);
+        }
+    }
+
+    private static void insertRows(SQLiteDatabase db) {
+        long millisecondsInADay = 1000*60*60*24;
+        db.beginTransaction();
+        try {
+            for (int location = 0; location < LOCATIONS; location++) {
+                ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        TestUtilities.TEST_LOCATION + location);
+                long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                        locationValues);
+                for (int day = 0; day < DAYS; day++) {
+                    ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + millisecondsInADay * day);
+                    db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static boolean hasIndex(SQLiteDatabase db, String name) {
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name = ?",
+                new String[]{name});
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+}
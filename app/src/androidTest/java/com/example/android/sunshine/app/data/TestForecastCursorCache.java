@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastCursorCache extends AndroidTestCase {
+
+    private static final String[] COLUMNS = {
+            WeatherEntry._ID, WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_MAX_TEMP
+    };
+    private static final String OTHER_LOCATION = "94043";
+
+    private final Uri mUri = WeatherEntry.buildWeatherLocationWithStartDate(
+            TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+    private final Uri mOtherUri = WeatherEntry.buildWeatherLocationWithStartDate(
+            OTHER_LOCATION, TestUtilities.TEST_DATE);
+
+    public void testPutThenGet() {
+        ForecastCursorCache cache = new ForecastCursorCache();
+        String key = ForecastCursorCache.keyFor(mUri, COLUMNS, null);
+        assertNull(cache.get(key));
+
+        Cursor cursor = cache.put(key, TestUtilities.TEST_LOCATION, createCursor(3),
+                cache.getGeneration());
+        assertRows(cursor, 3);
+        cursor.close();
+
+        cursor = cache.get(key);
+        assertNotNull("Error: Result wasn't cached", cursor);
+        assertRows(cursor, 3);
+        cursor.close();
+
+        // A different projection or sort order is a different result
+        assertNull(cache.get(ForecastCursorCache.keyFor(mUri, null, null)));
+        assertNull(cache.get(ForecastCursorCache.keyFor(mUri, COLUMNS,
+                WeatherEntry.COLUMN_DATE + " ASC")));
+    }
+
+    public void testInvalidateLocation() {
+        ForecastCursorCache cache = new ForecastCursorCache();
+        String key = ForecastCursorCache.keyFor(mUri, COLUMNS, null);
+        String otherKey = ForecastCursorCache.keyFor(mOtherUri, COLUMNS, null);
+        cache.put(key, TestUtilities.TEST_LOCATION, createCursor(3), cache.getGeneration()).close();
+        cache.put(otherKey, OTHER_LOCATION, createCursor(3), cache.getGeneration()).close();
+
+        cache.invalidate(TestUtilities.TEST_LOCATION);
+        assertNull("Error: Invalidated location still cached", cache.get(key));
+        Cursor cursor = cache.get(otherKey);
+        assertNotNull("Error: Invalidating one location dropped another", cursor);
+        cursor.close();
+
+        cache.invalidateAll();
+        assertNull(cache.get(otherKey));
+    }
+
+    public void testStalePutIgnored() {
+        ForecastCursorCache cache = new ForecastCursorCache();
+        String key = ForecastCursorCache.keyFor(mUri, COLUMNS, null);
+
+        // A query that read the database before a write, finishing after it
+        int generation = cache.getGeneration();
+        cache.invalidate(TestUtilities.TEST_LOCATION);
+        Cursor cursor = cache.put(key, TestUtilities.TEST_LOCATION, createCursor(3), generation);
+        assertRows(cursor, 3);
+        cursor.close();
+
+        assertNull("Error: Stale result was cached", cache.get(key));
+    }
+
+    public void testLargeResultNotCached() {
+        ForecastCursorCache cache = new ForecastCursorCache();
+        String key = ForecastCursorCache.keyFor(mUri, COLUMNS, null);
+        Cursor cursor = cache.put(key, TestUtilities.TEST_LOCATION,
+                createCursor(ForecastCursorCache.MAX_ROWS + 1), cache.getGeneration());
+        assertRows(cursor, ForecastCursorCache.MAX_ROWS + 1);
+        cursor.close();
+        assertNull(cache.get(key));
+    }
+
+    private static Cursor createCursor(int rows) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            cursor.addRow(new Object[]{(long) i, "Asteroids", 75.0 + i});
+        }
+        return cursor;
+    }
+
+    private static void assertRows(Cursor cursor, int rows) {
+        assertEquals(rows, cursor.getCount());
+        for (int i = 0; i < rows; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(i, cursor.getLong(0));
+            assertEquals("Asteroids", cursor.getString(1));
+            assertEquals(75.0 + i, cursor.getDouble(2));
+        }
+    }
+}
@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
@@ -512,4 +513,208 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Make sure replacing a forecast updates the days we already have in place, adds the new
+    // ones and prunes the old ones, with a single notification.
+    public void testReplaceForecast() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] oldForecast = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, oldForecast);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToPosition(BULK_INSERT_RECORDS_TO_INSERT / 2));
+        long keptId = cursor.getLong(0);
+        cursor.close();
+
+        // The new forecast starts halfway through the old one and runs on past it
+        long millisecondsInADay = 1000*60*60*24;
+        long newStartDate = TestUtilities.TEST_DATE
+                + millisecondsInADay * (BULK_INSERT_RECORDS_TO_INSERT / 2);
+        ContentValues[] newForecast = createBulkInsertWeatherValues(locationRowId);
+        for ( int i = 0; i < newForecast.length; i++ ) {
+            newForecast[i].put(WeatherEntry.COLUMN_DATE, newStartDate + millisecondsInADay * i);
+            newForecast[i].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        }
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, newForecast);
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_BEFORE_DATE, WeatherContract.normalizeDate(newStartDate));
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST, null, extras);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherEntry.EXTRA_ROW_COUNT));
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        // Only the new forecast should be left, and the day both forecasts shared keeps its id
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(keptId, cursor.getLong(cursor.getColumnIndex(WeatherEntry._ID)));
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testReplaceForecast.  Error validating WeatherEntry " + i,
+                    cursor, newForecast[i]);
+        }
+        cursor.close();
+    }
+
+    // A synced forecast can name a location that isn't stored yet by its setting; the
+    // location is added along with its weather.
+    public void testReplaceForecastAddsLocation() {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        ContentValues[] forecast = createBulkInsertWeatherValues(-1);
+        for (ContentValues weatherValues : forecast) {
+            weatherValues.remove(WeatherEntry.COLUMN_LOC_KEY);
+            weatherValues.put(LocationEntry.COLUMN_LOCATION_SETTING, TestUtilities.TEST_LOCATION);
+        }
+
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, forecast);
+        extras.putParcelableArray(WeatherEntry.EXTRA_LOCATIONS,
+                new ContentValues[]{locationValues});
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_BEFORE_DATE,
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST, null, extras);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherEntry.EXTRA_ROW_COUNT));
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: The location wasn't added exactly once", 1, cursor.getCount());
+        cursor.close();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, queryCount(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE)));
+
+        // and a second sync finds it rather than adding it again
+        mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST, null, extras);
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: The location was added again", 1, cursor.getCount());
+        cursor.close();
+    }
+
+    // The provider caches location queries in memory; make sure every kind of write to the
+    // location's weather is seen by the next query.
+    public void testForecastCacheInvalidation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        Uri forecastUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        assertEquals(0, queryCount(forecastUri));
+
+        // bulkInsert
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, queryCount(forecastUri));
+
+        // insert
+        long millisecondsInADay = 1000*60*60*24;
+        ContentValues extraDay = TestUtilities.createWeatherValues(locationRowId);
+        extraDay.put(WeatherEntry.COLUMN_DATE,
+                TestUtilities.TEST_DATE + millisecondsInADay * BULK_INSERT_RECORDS_TO_INSERT);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, extraDay);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT + 1, queryCount(forecastUri));
+
+        // update
+        ContentValues meteors = new ContentValues();
+        meteors.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, meteors, null, null);
+        Cursor cursor = mContext.getContentResolver().query(forecastUri,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Cached forecast survived an update", "Meteors", cursor.getString(0));
+        cursor.close();
+
+        // delete
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertEquals(0, queryCount(forecastUri));
+    }
+
+    // A sync that changes one day should only wake that day's observers (and the list's), and
+    // a sync that changes nothing shouldn't wake anybody.
+    public void testScopedNotifications() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+
+        long millisecondsInADay = 1000*60*60*24;
+        long changedDate = TestUtilities.TEST_DATE + millisecondsInADay * 3;
+        Bundle counts = getNotificationCounts();
+
+        TestUtilities.TestContentObserver unchangedDayObserver =
+                TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), true, unchangedDayObserver);
+        TestUtilities.TestContentObserver changedDayObserver =
+                TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        changedDate), true, changedDayObserver);
+        TestUtilities.TestContentObserver listObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), true, listObserver);
+
+        forecast[3].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        assertEquals(1, replaceForecast(forecast));
+
+        changedDayObserver.waitForNotificationOrFail();
+        listObserver.waitForNotificationOrFail();
+        assertFalse("Error: An unchanged day's observer was notified",
+                unchangedDayObserver.mContentChanged);
+        mContext.getContentResolver().unregisterContentObserver(unchangedDayObserver);
+        unchangedDayObserver.mHT.quit();
+        mContext.getContentResolver().unregisterContentObserver(changedDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(listObserver);
+
+        // and the same forecast again changes nothing
+        assertEquals(0, replaceForecast(forecast));
+
+        Bundle newCounts = getNotificationCounts();
+        assertEquals(counts.getInt(WeatherEntry.EXTRA_NOTIFICATION_COUNT) + 1,
+                newCounts.getInt(WeatherEntry.EXTRA_NOTIFICATION_COUNT));
+        assertEquals(counts.getInt(WeatherEntry.EXTRA_SILENT_WRITE_COUNT) + 1,
+                newCounts.getInt(WeatherEntry.EXTRA_SILENT_WRITE_COUNT));
+        assertEquals(counts.getInt(WeatherEntry.EXTRA_UNCHANGED_ROW_COUNT)
+                        + (BULK_INSERT_RECORDS_TO_INSERT - 1) + BULK_INSERT_RECORDS_TO_INSERT,
+                newCounts.getInt(WeatherEntry.EXTRA_UNCHANGED_ROW_COUNT));
+    }
+
+    private int replaceForecast(ContentValues[] forecast) {
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, forecast);
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_BEFORE_DATE,
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST, null, extras)
+                .getInt(WeatherEntry.EXTRA_ROW_COUNT);
+    }
+
+    private Bundle getNotificationCounts() {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_GET_NOTIFICATION_COUNTS, null, null);
+    }
+
+    private int queryCount(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
 }
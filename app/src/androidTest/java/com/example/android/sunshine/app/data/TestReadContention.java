@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Measures how long forecast queries take through the provider while a sync is writing in a
+    loop on another thread, the way the loaders, widgets and wear service see it.  The latencies
+    are logged under this class's tag; the test itself only checks that every read saw a whole
+    forecast, never one half written.  Skipped unless benchmarks are asked for.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestReadContention {
+
+    public static final String LOG_TAG = TestReadContention.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int READS = 200;
+
+    private Context mContext;
+
+    @BeforeClass
+    public static void onlyWhenAskedFor() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void testReadLatencyDuringSync() throws InterruptedException {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        final long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherEntry.METHOD_REPLACE_FORECAST, null,
+                createReplaceForecastExtras(locationRowId, 0));
+
+        Uri forecastUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+
+        long[] idle = timeReads(forecastUri, 0);
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger syncs = new AtomicInteger();
+        Thread sync = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    // Different temperatures every pass, so that each one really writes rows
+                    // rather than finding them unchanged
+                    mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                            WeatherEntry.METHOD_REPLACE_FORECAST, null,
+                            createReplaceForecastExtras(locationRowId, syncs.get() + 1));
+                    syncs.incrementAndGet();
+                }
+            }
+        });
+        sync.start();
+        long[] contended;
+        try {
+            contended = timeReads(forecastUri, READS);
+        } finally {
+            stop.set(true);
+            sync.join();
+        }
+
+        Log.i(LOG_TAG, "Idle reads: " + describe(idle));
+        Log.i(LOG_TAG, "Reads during " + syncs.get() + " syncs: " + describe(contended));
+    }
+
+    // Each read sorts differently, in a way that leaves the order as it is, so that none of them
+    // is served from the provider's ForecastCursorCache instead of the database
+    private long[] timeReads(Uri uri, int firstRead) {
+        long[] latencies = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            String sortOrder = WeatherEntry.COLUMN_DATE + " ASC, "
+                    + WeatherEntry.COLUMN_DATE + " + " + (firstRead + i);
+            long start = SystemClock.elapsedRealtimeNanos();
+            Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, sortOrder);
+            // getCount makes the cursor actually run the query
+            int count = cursor.getCount();
+            cursor.close();
+            latencies[i] = SystemClock.elapsedRealtimeNanos() - start;
+            assertEquals("Error: Read a partly written forecast", FORECAST_DAYS, count);
+        }
+        return latencies;
+    }
+
+    private Bundle createReplaceForecastExtras(long locationRowId, int pass) {
+        long millisecondsInADay = 1000*60*60*24;
+        ContentValues[] values = new ContentValues[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + millisecondsInADay * i);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 75 + pass % 20);
+            values[i].put(WeatherEntry.COLUMN_MIN_TEMP, 65 + pass % 20);
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherEntry.EXTRA_VALUES, values);
+        extras.putLong(WeatherEntry.EXTRA_PRUNE_BEFORE_DATE,
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        return extras;
+    }
+
+    private static String describe(long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return "median " + sorted[sorted.length / 2] / 1000 + "us, p95 "
+                + sorted[sorted.length * 95 / 100] / 1000 + "us, max "
+                + sorted[sorted.length - 1] / 1000 + "us";
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Checks that forecast responses are decoded for every Content-Encoding we accept, including
+    the raw deflate streams many servers send for "deflate", and that the byte counts either side
+    of the decompressor come out right.
+ */
+public class TestResponseDecoding extends AndroidTestCase {
+
+    private static final String FORECAST = "{\"cod\":\"200\",\"list\":[{\"dt\":1400356800,"
+            + "\"temp\":{\"min\":10.5,\"max\":18.2},\"weather\":[{\"id\":800}]}]}";
+
+    public void testIdentity() throws IOException {
+        assertDecodes(FORECAST.getBytes("UTF-8"), null);
+    }
+
+    public void testGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        compress(new GZIPOutputStream(bytes));
+        assertDecodes(bytes.toByteArray(), "gzip");
+    }
+
+    public void testZlibDeflate() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        compress(new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION)));
+        assertDecodes(bytes.toByteArray(), "deflate");
+    }
+
+    public void testRawDeflate() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        compress(new DeflaterOutputStream(bytes,
+                new Deflater(Deflater.DEFAULT_COMPRESSION, true)));
+        assertDecodes(bytes.toByteArray(), "DEFLATE");
+    }
+
+    private static void compress(OutputStream out) throws IOException {
+        out.write(FORECAST.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private static void assertDecodes(byte[] body, String contentEncoding) throws IOException {
+        CountingInputStream transferred = new CountingInputStream(new ByteArrayInputStream(body));
+        CountingInputStream decoded = new CountingInputStream(
+                SunshineSyncAdapter.decode(transferred, contentEncoding));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int count;
+        while ((count = decoded.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        decoded.close();
+
+        assertEquals("Error: " + contentEncoding + " decoded wrongly",
+                FORECAST, out.toString("UTF-8"));
+        assertEquals(body.length, transferred.getCount());
+        assertEquals(FORECAST.getBytes("UTF-8").length, decoded.getCount());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.support.test.InstrumentationRegistry;
+
+import org.junit.Assume;
+
+/*
+    Timing tests only log numbers, so they're skipped, and reported as skipped, unless asked for:
+
+        ./gradlew connectedCheck -Pandroid.testInstrumentationRunnerArguments.benchmarks=true
+
+    or -e benchmarks true when running the instrumentation through adb.  Call assumeEnabled
+    from a benchmark's @BeforeClass, or first thing in a benchmark @Test that shares a class
+    with behavior tests.
+ */
+public class Benchmarks {
+
+    public static final String ARGUMENT = "benchmarks";
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks not asked for",
+                Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString(ARGUMENT)));
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps a copy of every image in the remote art packs on disk, so that the forecast list, the
+ * detail view, the widgets and the notification all show art from a local file rather than
+ * waiting on the network the first time each image is needed.
+ *
+ * Files are stored by content: each is named for the SHA-256 of its bytes, so an image shared
+ * by two packs is only stored once, and a file whose bytes no longer match its name is known to
+ * be damaged.  An index maps each art url to the file holding it.  Every surface still asks
+ * Glide for the size it shows, and Glide scales the one local original down to it.
+ *
+ * The whole current pack is fetched by {@link #download(Context)}, from the sync adapter.
+ * Until an image has been fetched, {@link #getLocalUrl(Context, String)} hands back the remote
+ * url and Glide fetches it as before.  Only the current pack is kept; switching packs drops the
+ * old one's images.
+ *
+ * Each download checks the stored images' lengths.  Their bytes are only hashed again once a
+ * week, or after one of them failed to load.
+ */
+public final class ArtPackStore {
+    private static final String LOG_TAG = ArtPackStore.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "art";
+    private static final String INDEX_NAME = "index";
+    private static final String TEMP_PREFIX = "download";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Bump this if the layout of the index changes; older indexes are then ignored.
+    private static final int INDEX_VERSION = 2;
+
+    private static final int TIMEOUT_MILLIS = 15000;
+    private static final long VERIFY_INTERVAL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final Object sLock = new Object();
+    // Remote url to the url of the local copy, for every image stored; read from the index the
+    // first time it's needed
+    private static volatile Map<String, String> sLocalUrls;
+    // Set when a stored image failed to load, so the next download hashes every image
+    private static volatile boolean sVerifyRequested;
+
+    private ArtPackStore() {
+    }
+
+    /**
+     * The index: every stored image by its remote url, and when their bytes were last hashed.
+     */
+    static final class Index {
+        final Map<String, Entry> entries = new HashMap<>();
+        long verifiedAt;
+    }
+
+    /**
+     * One image in the index.
+     */
+    static final class Entry {
+        final String hash;
+        final long length;
+
+        Entry(String hash, long length) {
+            this.hash = hash;
+            this.length = length;
+        }
+    }
+
+    /**
+     * @return the url of the stored copy of the art at url, or url itself if there isn't one
+     */
+    static String getLocalUrl(Context context, String url) {
+        Map<String, String> localUrls = sLocalUrls;
+        if (null == localUrls) {
+            synchronized (sLock) {
+                if (null == sLocalUrls) {
+                    File directory = getDirectory(context);
+                    sLocalUrls = toLocalUrls(directory, readIndex(directory).entries);
+                }
+                localUrls = sLocalUrls;
+            }
+        }
+        String localUrl = localUrls.get(url);
+        return null == localUrl ? url : localUrl;
+    }
+
+    /**
+     * Tells the store that an image couldn't be loaded from url.  If url was one of the stored
+     * copies, the next download hashes every stored image rather than trusting its length.
+     */
+    public static void onLoadFailed(String url) {
+        if (null != url && url.startsWith(ContentResolver.SCHEME_FILE + ":")) {
+            sVerifyRequested = true;
+        }
+    }
+
+    /**
+     * Fetches every image in the current art pack that isn't stored yet, and fetches again any
+     * stored image that has been damaged.  Images from other packs are dropped.  If anything
+     * changed, the forecast is reloaded so it picks up the local copies.  This goes to the
+     * network, so call it from a background thread.
+     *
+     * @return true if the whole pack is now stored
+     */
+    public static boolean download(Context context) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        if (settings.usingLocalGraphics) {
+            return true;
+        }
+
+        boolean complete = true;
+        boolean changed = false;
+        synchronized (sLock) {
+            File directory = getDirectory(context);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.w(LOG_TAG, "Unable to create " + directory);
+                return false;
+            }
+
+            Index index = readIndex(directory);
+            long now = System.currentTimeMillis();
+            // Hashing every image takes a while, so most downloads only check the lengths.  A
+            // clock that went backwards counts as due.
+            boolean verify = sVerifyRequested || now < index.verifiedAt
+                    || now - index.verifiedAt >= VERIFY_INTERVAL_MILLIS;
+            sVerifyRequested = false;
+            if (verify) {
+                index.verifiedAt = now;
+                changed = true;
+            }
+
+            Set<String> urls = new HashSet<>();
+            for (String artName : WeatherCondition.getArtNames()) {
+                String url = String.format(Locale.US, settings.artPackUrlFormat, artName);
+                urls.add(url);
+                Entry entry = index.entries.get(url);
+                if (null != entry && (verify ? isIntact(new File(directory, entry.hash), entry)
+                        : hasLength(new File(directory, entry.hash), entry))) {
+                    continue;
+                }
+                Entry fetched = fetch(directory, url);
+                if (null != fetched) {
+                    index.entries.put(url, fetched);
+                    changed = true;
+                } else {
+                    complete = false;
+                    if (null != entry) {
+                        index.entries.remove(url);
+                        changed = true;
+                    }
+                }
+            }
+            // Whatever pack was chosen before this one
+            if (index.entries.keySet().retainAll(urls)) {
+                changed = true;
+            }
+
+            if (changed) {
+                try {
+                    writeIndex(directory, index);
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to write the art index", e);
+                }
+                deleteUnreferenced(directory, index.entries);
+                sLocalUrls = toLocalUrls(directory, index.entries);
+            }
+        }
+
+        if (changed) {
+            // Rebuild the rows with the local urls, and hold the images they now point at
+            context.getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+            ForecastArt.preload(context);
+        }
+        return complete;
+    }
+
+    private static Entry fetch(File directory, String url) {
+        HttpURLConnection connection = null;
+        InputStream in = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (HttpURLConnection.HTTP_OK != connection.getResponseCode()) {
+                Log.w(LOG_TAG, "Unable to fetch " + url + ": " + connection.getResponseCode());
+                return null;
+            }
+            in = connection.getInputStream();
+            Entry entry = store(directory, in, connection.getContentLength());
+            if (null == entry) {
+                Log.w(LOG_TAG, "Fetched art from " + url + " was damaged");
+            }
+            return entry;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to fetch " + url, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+            if (null != connection) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Copies an image into the directory, under the hash of its bytes.
+     *
+     * @param expectedLength the length the image should be, or -1 if unknown
+     * @return the stored image, or null if it was cut short or isn't an image
+     */
+    static Entry store(File directory, InputStream in, long expectedLength) throws IOException {
+        MessageDigest digest = newDigest();
+        File temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, directory);
+        try {
+            long length = 0;
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    length += read;
+                }
+            } finally {
+                out.close();
+            }
+
+            if ((expectedLength >= 0 && length != expectedLength) || !isImage(temp)) {
+                return null;
+            }
+            Entry entry = new Entry(toHex(digest.digest()), length);
+            File file = new File(directory, entry.hash);
+            // Someone else's copy of the same bytes is as good as ours
+            if (!(file.exists() && file.length() == length) && !temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+            return entry;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * @return true if the file is as long as the entry was when it was stored
+     */
+    static boolean hasLength(File file, Entry entry) {
+        return file.isFile() && file.length() == entry.length;
+    }
+
+    /**
+     * @return true if the file holds exactly the bytes the entry was stored with
+     */
+    static boolean isIntact(File file, Entry entry) {
+        if (!hasLength(file, entry)) {
+            return false;
+        }
+        InputStream in = null;
+        try {
+            MessageDigest digest = newDigest();
+            in = new FileInputStream(file);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return entry.hash.equals(toHex(digest.digest()));
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static boolean isImage(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    private static File getDirectory(Context context) {
+        // Not the cache directory: the point is to have the art when the network isn't there
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+
+    // Only the cheap checks, as this may run on the main thread; download() does the rest
+    private static Map<String, String> toLocalUrls(File directory, Map<String, Entry> index) {
+        Map<String, String> localUrls = new HashMap<>();
+        for (Map.Entry<String, Entry> indexed : index.entrySet()) {
+            File file = new File(directory, indexed.getValue().hash);
+            if (file.length() == indexed.getValue().length) {
+                localUrls.put(indexed.getKey(), Uri.fromFile(file).toString());
+            }
+        }
+        return Collections.unmodifiableMap(localUrls);
+    }
+
+    private static Index readIndex(File directory) {
+        Index index = new Index();
+        File file = new File(directory, INDEX_NAME);
+        if (!file.exists()) {
+            return index;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != INDEX_VERSION) {
+                return index;
+            }
+            index.verifiedAt = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                String hash = in.readUTF();
+                long length = in.readLong();
+                index.entries.put(url, new Entry(hash, length));
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read the art index", e);
+            index = new Index();
+        } finally {
+            closeQuietly(in);
+        }
+        return index;
+    }
+
+    private static void writeIndex(File directory, Index index) throws IOException {
+        File temp = new File(directory, INDEX_NAME + TEMP_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(index.verifiedAt);
+            out.writeInt(index.entries.size());
+            for (Map.Entry<String, Entry> indexed : index.entries.entrySet()) {
+                out.writeUTF(indexed.getKey());
+                out.writeUTF(indexed.getValue().hash);
+                out.writeLong(indexed.getValue().length);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, INDEX_NAME))) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp);
+        }
+    }
+
+    // Removes damaged and replaced images, other packs' images, and anything left over from an
+    // interrupted download
+    private static void deleteUnreferenced(File directory, Map<String, Entry> index) {
+        Set<String> referenced = new HashSet<>();
+        referenced.add(INDEX_NAME);
+        for (Entry entry : index.values()) {
+            referenced.add(entry.hash);
+        }
+        File[] files = directory.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            if (!referenced.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do.
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -29,14 +30,14 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.RequestManager;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.StableIdLookup {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -45,7 +46,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // The cursor's rows, formatted for display
+    private ForecastRow[] mRows;
     final private Context mContext;
+    final private RequestManager mGlide;
+    final private int mTodayArtSize;
+    final private int mArtSize;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
@@ -73,9 +79,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -84,12 +88,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
-    public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
+    /**
+     * @param glide Glide requests tied to the lifecycle of whatever shows the list
+     */
+    public ForecastAdapter(Context context, RequestManager glide, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
+        mGlide = glide;
+        mTodayArtSize = ForecastArt.getSize(context.getResources(), true);
+        mArtSize = ForecastArt.getSize(context.getResources(), false);
         mClickHandler = dh;
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        // Each day is its own item, whichever position it's in
+        setHasStableIds(true);
     }
 
     /*
@@ -124,26 +136,28 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastRow row = mRows[position];
         int defaultImage;
+        int artSize;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = row.artResource;
+                artSize = mTodayArtSize;
                 useLongToday = true;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = row.iconResource;
+                artSize = mArtSize;
                 useLongToday = false;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == row.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            // The same request ForecastArt preloaded, so it comes straight from memory
+            ForecastArt.load(mGlide, row.artUrl, artSize)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,36 +165,22 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(useLongToday ? row.longFriendlyDay : row.friendlyDay);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -208,13 +208,60 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mRows ) return 0;
+        return mRows.length;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows[position].date;
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        if ( null == mRows ) return RecyclerView.NO_POSITION;
+        // The rows are in date order, and the id is the date
+        int low = 0;
+        int high = mRows.length - 1;
+        while ( low <= high ) {
+            int middle = (low + high) >>> 1;
+            long date = mRows[middle].date;
+            if ( date < id ) {
+                low = middle + 1;
+            } else if ( date > id ) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return RecyclerView.NO_POSITION;
     }
 
     public void swapCursor(Cursor newCursor) {
+        ForecastRow[] oldRows = mRows;
+        DiffUtil.DiffResult diff = null;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if ( newCursor instanceof ForecastLoader.ForecastCursor ) {
+            ForecastLoader.ForecastCursor forecastCursor = (ForecastLoader.ForecastCursor) newCursor;
+            mRows = forecastCursor.getRows();
+            // Worked out by the loader, as long as it was working from the rows we're showing
+            diff = forecastCursor.getDiffFrom(oldRows);
+        } else if ( null != newCursor ) {
+            // Not from ForecastLoader, so the rows haven't been formatted yet
+            mRows = ForecastRow.fromCursor(mContext, newCursor);
+        } else {
+            mRows = null;
+        }
+
+        // Follow the selection to wherever its day is now, before anything is rebound
+        if ( null != mRows ) {
+            mICM.confirmCheckedPositionsById();
+        }
+        if ( null != diff ) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads the forecast list's art from a remote art pack, or from the copy of it kept by
+ * {@link ArtPackStore} once there is one.  An art pack has only a handful of images, so all of
+ * them are loaded ahead of time at the sizes the list shows them, and held on to: while they're
+ * held, a list request for the same url and size is answered from memory without going near the
+ * disk or the network.
+ *
+ * That only works if the list's requests match the held ones exactly, so both are made by
+ * {@link #load(RequestManager, String, int)}.
+ */
+public final class ForecastArt {
+    private static final String LOG_TAG = ForecastArt.class.getSimpleName();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the main thread
+    private static final List<Target<GlideDrawable>> sHeld = new ArrayList<>();
+    private static List<String> sHeldUrls = new ArrayList<>();
+    private static boolean sHeldArtFailed;
+
+    private ForecastArt() {
+    }
+
+    /**
+     * @param size the width and height of the view, in pixels
+     * @return a request for art at url, sized for a list row
+     */
+    static DrawableRequestBuilder<String> load(RequestManager glide, String url, int size) {
+        return glide.load(url)
+                .override(size, size)
+                .fitCenter();
+    }
+
+    /**
+     * @return the size of the art in the list, in pixels, for today's row or any other
+     */
+    static int getSize(Resources resources, boolean today) {
+        return resources.getDimensionPixelSize(today ? R.dimen.today_icon : R.dimen.list_icon);
+    }
+
+    /**
+     * Loads and holds every image in the current art pack, if they aren't held already, and lets
+     * go of any from an art pack no longer in use.  Call whenever the art pack may have changed,
+     * been stored, or the network may have come back, from any thread.
+     *
+     * The preload is always posted to the main thread, even from it: Glide starts requests
+     * there, and when this is called from a preference listener, SettingsSnapshot's own
+     * listener may not have run yet.  Once posted, every listener has seen the change.
+     */
+    public static void preload(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                preloadOnMainThread(appContext);
+            }
+        });
+    }
+
+    private static void preloadOnMainThread(Context context) {
+        // The urls the list will ask for, which are the stored copies once the pack is stored
+        List<String> urls = new ArrayList<>();
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        if (!settings.usingLocalGraphics) {
+            for (String artName : WeatherCondition.getArtNames()) {
+                urls.add(ArtPackStore.getLocalUrl(context,
+                        String.format(Locale.US, settings.artPackUrlFormat, artName)));
+            }
+        }
+        if (urls.equals(sHeldUrls) && !sHeldArtFailed) {
+            return;
+        }
+
+        for (Target<GlideDrawable> target : sHeld) {
+            Glide.clear(target);
+        }
+        sHeld.clear();
+        sHeldUrls = urls;
+        sHeldArtFailed = false;
+
+        // Held through the application's requests, which last as long as the process
+        RequestManager glide = Glide.with(context);
+        int[] sizes = {
+                getSize(context.getResources(), true), getSize(context.getResources(), false)
+        };
+        for (String url : urls) {
+            for (int size : sizes) {
+                sHeld.add(load(glide, url, size).into(new HeldArt(url, size)));
+            }
+        }
+    }
+
+    private static class HeldArt extends SimpleTarget<GlideDrawable> {
+        private final String mUrl;
+
+        HeldArt(String url, int size) {
+            super(size, size);
+            mUrl = url;
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Nothing to show; holding the request is what keeps the image in memory
+        }
+
+        @Override
+        public void onLoadFailed(Exception e, Drawable errorDrawable) {
+            Log.d(LOG_TAG, "Couldn't preload " + mUrl, e);
+            // Try the whole pack again next time
+            sHeldArtFailed = true;
+            ArtPackStore.onLoadFailed(mUrl);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.support.v7.util.DiffUtil;
+
+/**
+ * Loads the forecast list's cursor, and while still on the loader's thread formats every row of
+ * it into a {@link ForecastRow}, so the adapter has nothing left to do on the main thread but
+ * show them.  The rows travel with the cursor, as a {@link ForecastCursor}, so the fragment's
+ * loader callbacks and everything else that uses the cursor stay as they were.
+ *
+ * Each load is also compared with the rows the last load delivered, so the adapter can update
+ * only the rows that changed.
+ */
+class ForecastLoader extends CursorLoader {
+
+    // Written on the main thread, read on the loader's
+    private volatile ForecastRow[] mDeliveredRows;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (null == cursor) {
+            return null;
+        }
+        try {
+            ForecastRow[] rows = ForecastRow.fromCursor(getContext(), cursor);
+            ForecastRow[] previousRows = mDeliveredRows;
+            DiffUtil.DiffResult diff = null == previousRows ? null : diff(previousRows, rows);
+            return new ForecastCursor(cursor, rows, previousRows, diff);
+        } catch (RuntimeException ex) {
+            cursor.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset() && cursor instanceof ForecastCursor) {
+            mDeliveredRows = ((ForecastCursor) cursor).getRows();
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+
+    /**
+     * The loaded cursor, along with its rows ready formatted.
+     */
+    static class ForecastCursor extends CursorWrapper {
+        private final ForecastRow[] mRows;
+        private final ForecastRow[] mPreviousRows;
+        private final DiffUtil.DiffResult mDiff;
+
+        ForecastCursor(Cursor cursor, ForecastRow[] rows, ForecastRow[] previousRows,
+                       DiffUtil.DiffResult diff) {
+            super(cursor);
+            mRows = rows;
+            mPreviousRows = previousRows;
+            mDiff = diff;
+        }
+
+        ForecastRow[] getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return the changes from previousRows to these rows, or null if they are unknown
+         */
+        DiffUtil.DiffResult getDiffFrom(ForecastRow[] previousRows) {
+            return null != previousRows && previousRows == mPreviousRows ? mDiff : null;
+        }
+    }
+
+    /**
+     * @return the changes that turn oldRows into newRows
+     */
+    static DiffUtil.DiffResult diff(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        // The list is sorted by date, so days never move
+        return DiffUtil.calculateDiff(new RowDiff(oldRows, newRows), false);
+    }
+
+    // Rows are the same item if they are for the same day
+    private static class RowDiff extends DiffUtil.Callback {
+        private final ForecastRow[] mOldRows;
+        private final ForecastRow[] mNewRows;
+
+        RowDiff(ForecastRow[] oldRows, ForecastRow[] newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows[oldItemPosition].date == mNewRows[newItemPosition].date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows[oldItemPosition].hasSameContentsAs(mNewRows[newItemPosition]);
+        }
+    }
+}
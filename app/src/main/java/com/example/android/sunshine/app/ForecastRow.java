@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+/**
+ * One day of the forecast list, with everything {@link ForecastAdapter} shows for it already
+ * formatted, so that binding a row is only a matter of handing these to its views.
+ *
+ * Rows are built from the loader's cursor on the loader's thread; see {@link ForecastLoader}.
+ */
+final class ForecastRow {
+
+    final long date;
+
+    // The icon for most days, and the larger art for today
+    final int iconResource;
+    final int artResource;
+    // Where to load the art from, or null to use the resources above
+    final String artUrl;
+    final String transitionName;
+
+    // "Wednesday", or for today's large row, "Today, June 24"
+    final String friendlyDay;
+    final String longFriendlyDay;
+
+    final String description;
+    final String descriptionContentDescription;
+    final String high;
+    final String highContentDescription;
+    final String low;
+    final String lowContentDescription;
+
+    private ForecastRow(Context context, Cursor cursor, boolean usingLocalGraphics) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = usingLocalGraphics ? null
+                : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        // This enables better animations.  Even if we lose state due to a device rotation, the
+        // animator can use this to re-find the original view.  It goes by the day rather than
+        // the position, so it stays put when days are added or dropped.
+        transitionName = "iconView" + date;
+
+        friendlyDay = Utility.getFriendlyDayString(context, date, false);
+        longFriendlyDay = Utility.getFriendlyDayString(context, date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+
+        high = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        highContentDescription = context.getString(R.string.a11y_high_temp, high);
+
+        low = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        lowContentDescription = context.getString(R.string.a11y_low_temp, low);
+    }
+
+    /**
+     * @return true if the row would look the same as other once bound
+     */
+    boolean hasSameContentsAs(ForecastRow other) {
+        // A day that becomes today changes its friendly day, so it is rebound, and picks up the
+        // today layout, when it moves to the top
+        return iconResource == other.iconResource
+                && artResource == other.artResource
+                && TextUtils.equals(artUrl, other.artUrl)
+                && TextUtils.equals(transitionName, other.transitionName)
+                && TextUtils.equals(friendlyDay, other.friendlyDay)
+                && TextUtils.equals(longFriendlyDay, other.longFriendlyDay)
+                && TextUtils.equals(description, other.description)
+                && TextUtils.equals(descriptionContentDescription,
+                        other.descriptionContentDescription)
+                && TextUtils.equals(high, other.high)
+                && TextUtils.equals(highContentDescription, other.highContentDescription)
+                && TextUtils.equals(low, other.low)
+                && TextUtils.equals(lowContentDescription, other.lowContentDescription);
+    }
+
+    /**
+     * Formats every row of a cursor with the forecast list's projection.  This reads the whole
+     * cursor, so call it off the main thread when the cursor came from the database.
+     *
+     * @return a row per cursor row, in order; the cursor is left before its first row
+     */
+    static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        boolean usingLocalGraphics = Utility.usingLocalGraphics(context);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows[cursor.getPosition()] = new ForecastRow(context, cursor, usingLocalGraphics);
+        }
+        cursor.moveToPosition(-1);
+        return rows;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.JulianDay;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Turns forecast dates into the strings the UI shows for them ("Today, June 24", "Wednesday",
+ * "Mon Jun 3").  The formatters are made once for the current locale and time zone, and each
+ * day's strings are kept, since only the fortnight or so of days in the database are ever
+ * shown.  Everything is dropped when the day, the locale or the time zone changes.
+ *
+ * Called from the main thread by the list and detail views and from binder threads by the
+ * widget, so every method holds the instance lock.
+ */
+final class FriendlyDayFormatter {
+
+    private static final Object sLock = new Object();
+    private static FriendlyDayFormatter sInstance;
+
+    private final Context mContext;
+
+    // Strings already made for today, by Julian day
+    private final SparseArray<String> mFriendlyDays = new SparseArray<>();
+    private final SparseArray<String> mLongTodayFriendlyDays = new SparseArray<>();
+    private final SparseArray<String> mFullFriendlyDays = new SparseArray<>();
+
+    private Locale mLocale;
+    private TimeZone mTimeZone;
+    private boolean mTimeZoneChanged = true;
+    private int mToday;
+
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private SimpleDateFormat mShortDateFormat;
+
+    private FriendlyDayFormatter(Context context) {
+        mContext = context;
+    }
+
+    static FriendlyDayFormatter getInstance(Context context) {
+        synchronized (sLock) {
+            if (null == sInstance) {
+                Context appContext = context.getApplicationContext();
+                if (null == appContext) {
+                    appContext = context;
+                }
+                final FriendlyDayFormatter formatter = new FriendlyDayFormatter(appContext);
+                // TimeZone.getDefault() copies the zone on every call, so rather than checking
+                // it each time, wait to be told it's changed
+                appContext.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        formatter.onTimeZoneChanged();
+                    }
+                }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+                sInstance = formatter;
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = refresh(dateInMillis);
+        SparseArray<String> days = displayLongToday ? mLongTodayFriendlyDays : mFriendlyDays;
+        String friendlyDay = days.get(julianDay);
+        if (null == friendlyDay) {
+            if (displayLongToday && julianDay == mToday) {
+                // "Today, June 24"
+                friendlyDay = mContext.getString(R.string.format_full_friendly_date,
+                        mContext.getString(R.string.today), formatMonthDay(dateInMillis));
+            } else if (julianDay < mToday + 7) {
+                // Less than a week in the future, just the day name
+                friendlyDay = dayName(julianDay, dateInMillis);
+            } else {
+                // "Mon Jun 3"
+                friendlyDay = mShortDateFormat.format(dateInMillis);
+            }
+            days.put(julianDay, friendlyDay);
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    synchronized String getFullFriendlyDayString(long dateInMillis) {
+        int julianDay = refresh(dateInMillis);
+        String friendlyDay = mFullFriendlyDays.get(julianDay);
+        if (null == friendlyDay) {
+            friendlyDay = mContext.getString(R.string.format_full_friendly_date,
+                    dayName(julianDay, dateInMillis), formatMonthDay(dateInMillis));
+            mFullFriendlyDays.put(julianDay, friendlyDay);
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    synchronized String getDayName(long dateInMillis) {
+        return dayName(refresh(dateInMillis), dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    synchronized String getFormattedMonthDay(long dateInMillis) {
+        refresh(dateInMillis);
+        return formatMonthDay(dateInMillis);
+    }
+
+    private synchronized void onTimeZoneChanged() {
+        mTimeZoneChanged = true;
+    }
+
+    /*
+        Starts over if the locale, time zone or day has changed since the last call.  Returns the
+        Julian day of dateInMillis.
+     */
+    private int refresh(long dateInMillis) {
+        Locale locale = Locale.getDefault();
+        if (mTimeZoneChanged || !locale.equals(mLocale)) {
+            mTimeZoneChanged = false;
+            mLocale = locale;
+            mTimeZone = TimeZone.getDefault();
+            mDayNameFormat = createFormat("EEEE");
+            mMonthDayFormat = createFormat("MMMM dd");
+            mShortDateFormat = createFormat("EEE MMM dd");
+            clear();
+        }
+
+        int today = JulianDay.fromMillis(System.currentTimeMillis(), mTimeZone);
+        if (today != mToday) {
+            mToday = today;
+            clear();
+        }
+        return JulianDay.fromMillis(dateInMillis, mTimeZone);
+    }
+
+    private SimpleDateFormat createFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+
+    private void clear() {
+        mFriendlyDays.clear();
+        mLongTodayFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+    }
+
+    // "Today", "Tomorrow" or the day of the week, e.g. "Wednesday"
+    private String dayName(int julianDay, long dateInMillis) {
+        if (julianDay == mToday) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == mToday + 1) {
+            return mContext.getString(R.string.tomorrow);
+        }
+        return mDayNameFormat.format(dateInMillis);
+    }
+
+    // "December 06"
+    private String formatMonthDay(long dateInMillis) {
+        return mMonthDayFormat.format(dateInMillis);
+    }
+}
@@ -28,40 +28,40 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  Selections
+ * are remembered by the adapter's stable ids, and follow their items to new positions when the
+ * adapter's data changes.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
 
+    /**
+     * Implemented by the adapter, so that a selected item can be found again after its data
+     * changes.
+     */
+    public interface StableIdLookup {
+        /**
+         * @return the position of the item with the stable id, or RecyclerView.NO_POSITION if
+         * there isn't one
+         */
+        int getPositionForId(long id);
+    }
+
     private RecyclerView.Adapter mAdapter;
-    private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
-        @Override
-        public void onChanged() {
-            super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
-        }
-    };
+    private StableIdLookup mStableIdLookup;
 
     private ItemChoiceManager() {
     }
 
     ;
 
-    public ItemChoiceManager(RecyclerView.Adapter adapter) {
+    public <A extends RecyclerView.Adapter & StableIdLookup> ItemChoiceManager(A adapter) {
         mAdapter = adapter;
+        mStableIdLookup = adapter;
     }
 
-    /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
-     */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-
     /**
      * Running state of which positions are currently checked
      */
@@ -109,6 +109,11 @@ public class ItemChoiceManager {
             case AbsListView.CHOICE_MODE_MULTIPLE: {
                 boolean checked = mCheckStates.get(position, false);
                 mCheckStates.put(position, !checked);
+                if (checked) {
+                    mCheckedIdStates.delete(mAdapter.getItemId(position));
+                } else {
+                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
+                }
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
@@ -154,36 +159,23 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
+    /**
+     * Moves the checked positions to wherever the checked ids are now.  Call this when the
+     * adapter's data changes, before the change is notified; ids that have gone are unchecked.
+     */
+    void confirmCheckedPositionsById() {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
-
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            final int position = mStableIdLookup.getPositionForId(id);
+            if (position == RecyclerView.NO_POSITION) {
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
             }
         }
     }
@@ -18,9 +18,11 @@ package com.example.android.sunshine.app;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
@@ -35,6 +37,10 @@ import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
 import com.google.android.gms.maps.model.LatLng;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
  * <p>
@@ -59,7 +65,8 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
-
+        bindSavedLocations((MultiSelectListPreference)
+                findPreference(getString(R.string.pref_sync_saved_locations_key)));
 
         // If we are using a PlacePicker location, we need to show attributions.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -106,6 +113,42 @@ public class SettingsActivity extends PreferenceActivity
                         .getString(preference.getKey(), ""));
     }
 
+    /**
+     * Offers every location we have weather for, other than the current one, to be kept up to
+     * date along with it.  There are only ever a handful, so they're read straight away.
+     */
+    private void bindSavedLocations(MultiSelectListPreference preference) {
+        String currentLocation = Utility.getPreferredLocation(this);
+        List<CharSequence> entries = new ArrayList<CharSequence>();
+        List<CharSequence> entryValues = new ArrayList<CharSequence>();
+        Cursor cursor = getContentResolver().query(WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        WeatherContract.LocationEntry.COLUMN_CITY_NAME},
+                null,
+                null,
+                WeatherContract.LocationEntry.COLUMN_CITY_NAME + " ASC");
+        if (null != cursor) {
+            while (cursor.moveToNext()) {
+                String locationSetting = cursor.getString(0);
+                if (locationSetting.equals(currentLocation)) {
+                    continue;
+                }
+                String cityName = cursor.getString(1);
+                entries.add(TextUtils.isEmpty(cityName) ? locationSetting : cityName);
+                entryValues.add(locationSetting);
+            }
+            cursor.close();
+        }
+        preference.setEntries(entries.toArray(new CharSequence[entries.size()]));
+        preference.setEntryValues(entryValues.toArray(new CharSequence[entryValues.size()]));
+        preference.setEnabled(!entryValues.isEmpty());
+
+        preference.setOnPreferenceChangeListener(this);
+        setPreferenceSummary(preference, preference.getValues());
+    }
+
+    // A MultiSelectListPreference's value is the Set<String> of its values picked
+    @SuppressWarnings("unchecked")
     private void setPreferenceSummary(Preference preference, Object value) {
         String stringValue = value.toString();
         String key = preference.getKey();
@@ -118,6 +161,20 @@ public class SettingsActivity extends PreferenceActivity
             if (prefIndex >= 0) {
                 preference.setSummary(listPreference.getEntries()[prefIndex]);
             }
+        } else if (preference instanceof MultiSelectListPreference) {
+            // Name the saved locations picked, leaving out any we no longer have weather for
+            MultiSelectListPreference multiSelectPreference = (MultiSelectListPreference) preference;
+            List<CharSequence> picked = new ArrayList<CharSequence>();
+            for (String pickedValue : (Set<String>) value) {
+                int prefIndex = multiSelectPreference.findIndexOfValue(pickedValue);
+                if (prefIndex >= 0) {
+                    picked.add(multiSelectPreference.getEntries()[prefIndex]);
+                }
+            }
+            preference.setSummary(picked.isEmpty()
+                    ? getString(R.string.pref_sync_saved_locations_none)
+                    : getString(R.string.pref_sync_saved_locations_some,
+                            TextUtils.join(", ", picked)));
         } else if (key.equals(getString(R.string.pref_location_key))) {
             @SunshineSyncAdapter.LocationStatus int status = Utility.getLocationStatus(this);
             switch (status) {
@@ -175,9 +232,15 @@ public class SettingsActivity extends PreferenceActivity
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
+        } else if ( key.equals(getString(R.string.pref_sync_saved_locations_key)) ) {
+            // fetch any location that's just been picked rather than waiting for the next sync
+            SunshineSyncAdapter.syncImmediately(this);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
+            ForecastArt.preload(this);
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // and have the sync store the new pack on disk
+            SunshineSyncAdapter.syncImmediately(this);
         }
     }
 
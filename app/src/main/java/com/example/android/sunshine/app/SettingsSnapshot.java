@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The user's settings as they stood at one moment, read once and kept in final fields, so that
+ * the Utility accessors called while binding every row don't go back to SharedPreferences (and
+ * the resources, for the keys) each time.
+ *
+ * A new snapshot is built whenever one of the settings it holds changes.  SharedPreferences
+ * tells its listeners about an edit committed on the main thread before commit() returns; an
+ * edit made on another thread is seen once the main thread gets round to the notification.
+ */
+final class SettingsSnapshot {
+
+    private static final Object sLock = new Object();
+    private static volatile SettingsSnapshot sSnapshot;
+    // SharedPreferences only holds its listeners weakly, so this keeps ours alive
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    final String location;
+    final boolean locationLatLonAvailable;
+    final float locationLatitude;
+    final float locationLongitude;
+    final boolean metric;
+    // The art pack's url format, with a %s for the art's name
+    final String artPackUrlFormat;
+    final boolean usingLocalGraphics;
+    // The saved locations to sync along with the preferred one
+    final Set<String> syncedSavedLocations;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        locationLatLonAvailable = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        locationLatitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        locationLongitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPackUrlFormat = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        usingLocalGraphics = artPackUrlFormat.equals(sunshineArtPack);
+
+        // A copy, since the set SharedPreferences hands out mustn't be held on to
+        syncedSavedLocations = Collections.unmodifiableSet(new HashSet<>(prefs.getStringSet(
+                context.getString(R.string.pref_sync_saved_locations_key),
+                Collections.<String>emptySet())));
+    }
+
+    /**
+     * @return the current settings, reading them in the first time through
+     */
+    static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sSnapshot;
+        if (null != snapshot) {
+            return snapshot;
+        }
+        synchronized (sLock) {
+            if (null == sSnapshot) {
+                Context appContext = context.getApplicationContext();
+                if (null == appContext) {
+                    appContext = context;
+                }
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                // Listen before reading, so a change made while reading isn't missed
+                sListener = new SettingsListener(appContext);
+                prefs.registerOnSharedPreferenceChangeListener(sListener);
+                sSnapshot = new SettingsSnapshot(appContext, prefs);
+            }
+            return sSnapshot;
+        }
+    }
+
+    private static class SettingsListener
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Context mContext;
+        private final Set<String> mKeys = new HashSet<>();
+
+        SettingsListener(Context context) {
+            mContext = context;
+            mKeys.add(context.getString(R.string.pref_location_key));
+            mKeys.add(context.getString(R.string.pref_location_latitude));
+            mKeys.add(context.getString(R.string.pref_location_longitude));
+            mKeys.add(context.getString(R.string.pref_units_key));
+            mKeys.add(context.getString(R.string.pref_art_pack_key));
+            mKeys.add(context.getString(R.string.pref_sync_saved_locations_key));
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            // The location status changes on every sync, and isn't part of the snapshot.  A null
+            // key means the preferences were cleared.
+            if (null != key && !mKeys.contains(key)) {
+                return;
+            }
+            synchronized (sLock) {
+                sSnapshot = new SettingsSnapshot(mContext, prefs);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Everything Sunshine shows for an OpenWeatherMap condition id, looked up in a table indexed by
+ * the id itself rather than by walking a chain of ranges every time a row is bound.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+class WeatherCondition {
+
+    // OWM condition ids are three digits
+    private static final int MAX_ID = 999;
+
+    private static final WeatherCondition[] sConditions = new WeatherCondition[MAX_ID + 1];
+    // Every art name used by some condition, each once
+    private static final Set<String> sArtNames = new LinkedHashSet<>();
+
+    static {
+        // Icons and art.  Where ranges overlap, the first one listed wins.
+        setVisuals(200, 232, R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg");
+        setVisuals(300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain, "light_rain",
+                "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg");
+        setVisuals(500, 504, R.drawable.ic_rain, R.drawable.art_rain, "rain",
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+        setVisuals(511, 511, R.drawable.ic_snow, R.drawable.art_snow, "snow",
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+        setVisuals(520, 531, R.drawable.ic_rain, R.drawable.art_rain, "rain",
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+        setVisuals(600, 622, R.drawable.ic_snow, R.drawable.art_snow, "snow",
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+        setVisuals(701, 761, R.drawable.ic_fog, R.drawable.art_fog, "fog",
+                "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg");
+        setVisuals(781, 781, R.drawable.ic_storm, R.drawable.art_storm, "storm",
+                "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg");
+        setVisuals(800, 800, R.drawable.ic_clear, R.drawable.art_clear, "clear",
+                "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg");
+        setVisuals(801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds, "light_clouds",
+                "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg");
+        setVisuals(802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds",
+                "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg");
+
+        // Descriptions
+        setDescription(200, 232, R.string.condition_2xx);
+        setDescription(300, 321, R.string.condition_3xx);
+        setDescription(500, R.string.condition_500);
+        setDescription(501, R.string.condition_501);
+        setDescription(502, R.string.condition_502);
+        setDescription(503, R.string.condition_503);
+        setDescription(504, R.string.condition_504);
+        setDescription(511, R.string.condition_511);
+        setDescription(520, R.string.condition_520);
+        setDescription(531, R.string.condition_531);
+        setDescription(600, R.string.condition_600);
+        setDescription(601, R.string.condition_601);
+        setDescription(602, R.string.condition_602);
+        setDescription(611, R.string.condition_611);
+        setDescription(612, R.string.condition_612);
+        setDescription(615, R.string.condition_615);
+        setDescription(616, R.string.condition_616);
+        setDescription(620, R.string.condition_620);
+        setDescription(621, R.string.condition_621);
+        setDescription(622, R.string.condition_622);
+        setDescription(701, R.string.condition_701);
+        setDescription(711, R.string.condition_711);
+        setDescription(721, R.string.condition_721);
+        setDescription(731, R.string.condition_731);
+        setDescription(741, R.string.condition_741);
+        setDescription(751, R.string.condition_751);
+        setDescription(761, R.string.condition_761);
+        setDescription(762, R.string.condition_762);
+        setDescription(771, R.string.condition_771);
+        setDescription(781, R.string.condition_781);
+        setDescription(800, R.string.condition_800);
+        setDescription(801, R.string.condition_801);
+        setDescription(802, R.string.condition_802);
+        setDescription(803, R.string.condition_803);
+        setDescription(804, R.string.condition_804);
+        setDescription(900, R.string.condition_900);
+        setDescription(901, R.string.condition_901);
+        setDescription(902, R.string.condition_902);
+        setDescription(903, R.string.condition_903);
+        setDescription(904, R.string.condition_904);
+        setDescription(905, R.string.condition_905);
+        setDescription(906, R.string.condition_906);
+        setDescription(951, R.string.condition_951);
+        setDescription(952, R.string.condition_952);
+        setDescription(953, R.string.condition_953);
+        setDescription(954, R.string.condition_954);
+        setDescription(955, R.string.condition_955);
+        setDescription(956, R.string.condition_956);
+        setDescription(957, R.string.condition_957);
+        setDescription(958, R.string.condition_958);
+        setDescription(959, R.string.condition_959);
+        setDescription(960, R.string.condition_960);
+        setDescription(961, R.string.condition_961);
+        setDescription(962, R.string.condition_962);
+    }
+
+    // -1 if there is no icon or art for the condition
+    int iconResource = -1;
+    int artResource = -1;
+    // The name of the condition's art within an art pack, or null
+    String artName;
+    // null if there is no image for the condition
+    String imageUrl;
+    // 0 if the condition has no description of its own
+    int descriptionResource;
+
+    private WeatherCondition() {
+    }
+
+    /**
+     * @return what to show for the OWM condition id, or null if there is nothing to show for it
+     */
+    static WeatherCondition forId(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_ID) {
+            return null;
+        }
+        return sConditions[weatherId];
+    }
+
+    /**
+     * @return the names of all the art in an art pack that any condition can show
+     */
+    static Set<String> getArtNames() {
+        return Collections.unmodifiableSet(sArtNames);
+    }
+
+    private static WeatherCondition get(int weatherId) {
+        WeatherCondition condition = sConditions[weatherId];
+        if (null == condition) {
+            condition = new WeatherCondition();
+            sConditions[weatherId] = condition;
+        }
+        return condition;
+    }
+
+    private static void setVisuals(int fromId, int toId, int iconResource, int artResource,
+                                   String artName, String imageUrl) {
+        sArtNames.add(artName);
+        for (int weatherId = fromId; weatherId <= toId; weatherId++) {
+            WeatherCondition condition = get(weatherId);
+            if (condition.iconResource == -1) {
+                condition.iconResource = iconResource;
+                condition.artResource = artResource;
+                condition.artName = artName;
+                condition.imageUrl = imageUrl;
+            }
+        }
+    }
+
+    private static void setDescription(int fromId, int toId, int descriptionResource) {
+        for (int weatherId = fromId; weatherId <= toId; weatherId++) {
+            get(weatherId).descriptionResource = descriptionResource;
+        }
+    }
+
+    private static void setDescription(int weatherId, int descriptionResource) {
+        setDescription(weatherId, weatherId, descriptionResource);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Keeps the results of the provider's forecast queries in memory, so that the burst of nearly
+ * identical "today onwards for this location" queries from the fragments, widgets, wear, Muzei
+ * and the notification after each sync costs one trip to SQLite instead of one each.
+ *
+ * Results are keyed by (uri, projection, sort order) and served as MatrixCursors.  The provider
+ * invalidates a location's results whenever it writes that location's weather, and everything
+ * when it can't tell which locations a write touched.
+ *
+ * Thread safe; the provider is queried from many binder threads at once.
+ */
+class ForecastCursorCache {
+
+    // A handful of locations, each with a couple of projections
+    private static final int MAX_ENTRIES = 16;
+    // Bigger results, like a location's whole history, aren't worth holding on to
+    static final int MAX_ROWS = 64;
+
+    private static final class Entry {
+        final String locationSetting;
+        final String[] columns;
+        final Object[][] rows;
+
+        Entry(String locationSetting, String[] columns, Object[][] rows) {
+            this.locationSetting = locationSetting;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private final LruCache<String, Entry> mEntries = new LruCache<String, Entry>(MAX_ENTRIES);
+    // Bumped by every invalidation, so that a query which read the database before a write
+    // can't put its now stale result in the cache after the write invalidated it.
+    private int mGeneration;
+
+    static String keyFor(Uri uri, String[] projection, String sortOrder) {
+        return uri + "|" + Arrays.toString(projection) + "|" + sortOrder;
+    }
+
+    /**
+     * @return a new cursor over the cached result for key, or null if there isn't one
+     */
+    synchronized Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        return null == entry ? null : toCursor(entry);
+    }
+
+    /**
+     * @return the generation to pass to {@link #put}; read it before querying the database
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches the result of a query for key, unless the cache has been invalidated since
+     * generation was read.
+     *
+     * @return a cursor to hand back in place of the one passed in, which may have been closed
+     */
+    Cursor put(String key, String locationSetting, Cursor cursor, int generation) {
+        if (null == cursor || cursor.getCount() > MAX_ROWS) {
+            return cursor;
+        }
+        Entry entry = new Entry(locationSetting, cursor.getColumnNames(), readRows(cursor));
+        cursor.close();
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        return toCursor(entry);
+    }
+
+    /**
+     * Drops every result for the location.
+     */
+    synchronized void invalidate(String locationSetting) {
+        mGeneration++;
+        for (Map.Entry<String, Entry> entry : mEntries.snapshot().entrySet()) {
+            if (entry.getValue().locationSetting.equals(locationSetting)) {
+                mEntries.remove(entry.getKey());
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.evictAll();
+    }
+
+    private static Object[][] readRows(Cursor cursor) {
+        int columnCount = cursor.getColumnCount();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[column] = cursor.getDouble(column);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[column] = cursor.getString(column);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[column] = cursor.getBlob(column);
+                        break;
+                    default:
+                        row[column] = null;
+                }
+            }
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    private static Cursor toCursor(Entry entry) {
+        MatrixCursor cursor = new MatrixCursor(entry.columns, entry.rows.length);
+        for (Object[] row : entry.rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+}
@@ -16,8 +16,11 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -27,13 +30,33 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // Bumping it also means adding a step to migrate() that takes the previous version's schema
+    // to the new one, without throwing away the data.
+    static final int DATABASE_VERSION = 3;
+
+    // The oldest version migrate() knows how to upgrade.  Anything older is discarded and rebuilt.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves the provider's location queries, which look weather up by location_id (joined from
+    // location_setting) and a date or date range, ordered by date.  The UNIQUE (date, location_id)
+    // constraint's index leads with date, so it can't do that; it still serves the prune by date.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With a write-ahead log, a sync's write transaction no longer locks out the loaders,
+        // widgets and wear service reading the forecast; SQLiteDatabase gives each reading
+        // thread its own connection from its pool and they all see the last committed data.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -81,18 +104,66 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // SQLiteOpenHelper runs this inside a transaction, so an upgrade that fails part way
+        // leaves the database as it was.
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // We don't know what these looked like well enough to migrate them, and the database
+            // is only a cache for online data, so discard the data and start over.
+            Log.i(LOG_TAG, "Rebuilding database version " + oldVersion);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        // Otherwise keep the cached weather, so an upgrade doesn't make every user hit the
+        // network at once, and bring the schema forward one version at a time.
+        long start = SystemClock.elapsedRealtime();
+        for (int version = oldVersion; version < newVersion; version++) {
+            migrate(sqLiteDatabase, version);
+        }
+        Log.i(LOG_TAG, "Migrated database from version " + oldVersion + " to " + newVersion +
+                " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /**
+     * Copies what it can of the write-ahead log back into the database, without waiting on (or
+     * blocking) any readers.  SQLite only checkpoints on its own once the log reaches 1000 pages,
+     * so this is run after each sync's writes to stop the log, and the time readers spend
+     * looking through it, from growing between syncs.
+     */
+    void checkpoint() {
+        Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            // busy, pages in the log, pages checkpointed
+            if (cursor.moveToFirst()) {
+                Log.v(LOG_TAG, "Checkpointed " + cursor.getInt(2) + " of " + cursor.getInt(1) +
+                        " log pages");
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Upgrades the schema one step, from fromVersion to fromVersion + 1, keeping the data.
+     */
+    private void migrate(SQLiteDatabase sqLiteDatabase, int fromVersion) {
+        switch (fromVersion) {
+            case 2:
+                // 3 added an index for the provider's location queries
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            default:
+                throw new IllegalStateException("No migration from database version " +
+                        fromVersion);
+        }
     }
 }
@@ -17,25 +17,43 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final ForecastCursorCache mForecastCache = new ForecastCursorCache();
+
+    // How well the scoped notifications are doing; see METHOD_GET_NOTIFICATION_COUNTS.
+    // Notifications sent on a location or day rather than on all the weather
+    private final AtomicInteger mNotifications = new AtomicInteger();
+    // Weather writes that changed nothing, and so woke nobody
+    private final AtomicInteger mSilentWrites = new AtomicInteger();
+    // Synced rows that were already stored as they came in, and so woke nobody
+    private final AtomicInteger mUnchangedRows = new AtomicInteger();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +70,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -108,6 +126,125 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Serves a location's weather from mForecastCache, going to the database on a miss.
+     */
+    private Cursor getCachedWeather(Uri uri, String[] projection, String sortOrder, int match) {
+        String key = ForecastCursorCache.keyFor(uri, projection, sortOrder);
+        Cursor cursor = mForecastCache.get(key);
+        if (null != cursor) {
+            return cursor;
+        }
+        int generation = mForecastCache.getGeneration();
+        if (match == WEATHER_WITH_LOCATION_AND_DATE) {
+            cursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+        } else {
+            cursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+        }
+        return mForecastCache.put(key, WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                cursor, generation);
+    }
+
+    /**
+     * Tells observers, and the forecast cache, about the weather a write changed.
+     *
+     * Rather than waking every observer of every location and date, a location with one changed
+     * day is notified on weather/<location>/<date>, which reaches that day's observers and the
+     * location's list; a location with several changed days is notified once on
+     * weather/<location>.  Weather for a location that can't be found is notified on the
+     * weather uri as a whole.
+     *
+     * @param changedDays the normalized dates that changed, by location row id
+     */
+    private void notifyWeatherChanged(SQLiteDatabase db, Map<Long, Set<Long>> changedDays) {
+        if (changedDays.isEmpty()) {
+            mSilentWrites.incrementAndGet();
+            return;
+        }
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID + " IN (");
+        String[] selectionArgs = new String[changedDays.size()];
+        int i = 0;
+        for (Long locationId : changedDays.keySet()) {
+            selection.append(i == 0 ? "?" : ", ?");
+            selectionArgs[i++] = String.valueOf(locationId);
+        }
+        selection.append(")");
+        Map<Long, String> locationSettings = new HashMap<Long, String>();
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationSettings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ContentResolver resolver = getContext().getContentResolver();
+        boolean unknownLocation = false;
+        for (Map.Entry<Long, Set<Long>> location : changedDays.entrySet()) {
+            String locationSetting = locationSettings.get(location.getKey());
+            if (null == locationSetting) {
+                unknownLocation = true;
+                continue;
+            }
+            mForecastCache.invalidate(locationSetting);
+            Set<Long> dates = location.getValue();
+            if (dates.size() == 1) {
+                resolver.notifyChange(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, dates.iterator().next()), null);
+            } else {
+                resolver.notifyChange(
+                        WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting), null);
+            }
+            mNotifications.incrementAndGet();
+        }
+        if (unknownLocation) {
+            mForecastCache.invalidateAll();
+            resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            mNotifications.incrementAndGet();
+        }
+    }
+
+    private static void addChangedDay(Map<Long, Set<Long>> changedDays, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (null != locationId && null != date) {
+            addChangedDay(changedDays, locationId, date);
+        }
+    }
+
+    private static void addChangedDay(Map<Long, Set<Long>> changedDays, long locationId,
+                                      long date) {
+        Set<Long> dates = changedDays.get(locationId);
+        if (null == dates) {
+            dates = new HashSet<Long>();
+            changedDays.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    /**
+     * Adds the location and date of every weather row matching the selection.  Call it inside
+     * the write's transaction, before the write.
+     */
+    private static void addChangedDays(Map<Long, Set<Long>> changedDays, SQLiteDatabase db,
+                                       String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                addChangedDay(changedDays, cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -179,12 +316,13 @@ public class WeatherProvider extends ContentProvider {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                retCursor = getCachedWeather(uri, projection, sortOrder,
+                        WEATHER_WITH_LOCATION_AND_DATE);
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                retCursor = getCachedWeather(uri, projection, sortOrder, WEATHER_WITH_LOCATION);
                 break;
             }
             // "weather"
@@ -238,6 +376,9 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                Map<Long, Set<Long>> changedDays = new HashMap<Long, Set<Long>>();
+                addChangedDay(changedDays, values);
+                notifyWeatherChanged(db, changedDays);
                 break;
             }
             case LOCATION: {
@@ -246,12 +387,12 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                getContext().getContentResolver().notifyChange(uri, null);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -263,21 +404,33 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            case WEATHER: {
+                Map<Long, Set<Long>> changedDays = new HashMap<Long, Set<Long>>();
+                db.beginTransaction();
+                try {
+                    addChangedDays(changedDays, db, selection, selectionArgs);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                notifyWeatherChanged(db, changedDays);
                 break;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                // Because a null deletes all rows
+                if (rowsDeleted != 0) {
+                    // Weather for a deleted location no longer joins to it
+                    mForecastCache.invalidateAll();
+                    getContext().getContentResolver().notifyChange(uri, null);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
         return rowsDeleted;
     }
 
@@ -297,21 +450,44 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                        || values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+                    // Rows are moving to other days, which could be anywhere
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0) {
+                        mForecastCache.invalidateAll();
+                        getContext().getContentResolver().notifyChange(uri, null);
+                    }
+                    break;
+                }
+                Map<Long, Set<Long>> changedDays = new HashMap<Long, Set<Long>>();
+                db.beginTransaction();
+                try {
+                    addChangedDays(changedDays, db, selection, selectionArgs);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                notifyWeatherChanged(db, changedDays);
                 break;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    // Location columns are part of every weather query's results
+                    mForecastCache.invalidateAll();
+                    getContext().getContentResolver().notifyChange(uri, null);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
         return rowsUpdated;
     }
 
@@ -323,25 +499,154 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                Map<Long, Set<Long>> changedDays = new HashMap<Long, Set<Long>>();
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
+                    WeatherWriter writer = new WeatherWriter(db);
+                    try {
+                        for (ContentValues value : values) {
+                            long _id = writer.insert(value);
+                            if (_id != -1) {
+                                returnCount++;
+                                addChangedDay(changedDays, value);
+                            }
                         }
+                    } finally {
+                        writer.close();
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyWeatherChanged(db, changedDays);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.WeatherEntry.METHOD_REPLACE_FORECAST.equals(method)) {
+            Parcelable[] values = extras.getParcelableArray(WeatherContract.WeatherEntry.EXTRA_VALUES);
+            Parcelable[] locations =
+                    extras.getParcelableArray(WeatherContract.WeatherEntry.EXTRA_LOCATIONS);
+            long pruneBeforeDate = extras.getLong(WeatherContract.WeatherEntry.EXTRA_PRUNE_BEFORE_DATE);
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_ROW_COUNT,
+                    replaceForecast(values, locations, pruneBeforeDate));
+            return result;
+        } else if (WeatherContract.WeatherEntry.METHOD_GET_NOTIFICATION_COUNTS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_NOTIFICATION_COUNT,
+                    mNotifications.get());
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_SILENT_WRITE_COUNT,
+                    mSilentWrites.get());
+            result.putInt(WeatherContract.WeatherEntry.EXTRA_UNCHANGED_ROW_COUNT,
+                    mUnchangedRows.get());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Upserts the given weather rows and prunes every row older than pruneBeforeDate in one
+     * transaction, so readers never see a mix of the old and new forecast, then notifies the
+     * observers of the days that changed.  Locations the rows name by setting are added in
+     * the same transaction if they aren't stored yet.
+     *
+     * Existing rows are updated in place rather than replaced, so a day keeps its _id across
+     * syncs, and rows that are already stored as given aren't written at all.
+     *
+     * @param locations location rows for the locations the weather rows name by setting, or null
+     * @return the number of rows added or changed
+     */
+    private int replaceForecast(Parcelable[] values, Parcelable[] locations,
+                                long pruneBeforeDate) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount = 0;
+        Map<Long, Set<Long>> changedDays = new HashMap<Long, Set<Long>>();
+        Map<String, Long> locationIds = new HashMap<String, Long>();
+        boolean locationAdded = false;
+        db.beginTransaction();
+        try {
+            if (null != locations) {
+                for (Parcelable parcelable : locations) {
+                    ContentValues location = (ContentValues) parcelable;
+                    String locationSetting = location.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                    long locationId = findLocation(db, locationSetting);
+                    if (-1 == locationId) {
+                        locationId = db.insertOrThrow(WeatherContract.LocationEntry.TABLE_NAME,
+                                null, location);
+                        locationAdded = true;
+                    }
+                    locationIds.put(locationSetting, locationId);
+                }
+            }
+            WeatherWriter writer = new WeatherWriter(db);
+            try {
+                for (Parcelable parcelable : values) {
+                    ContentValues value = (ContentValues) parcelable;
+                    if (value.containsKey(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)) {
+                        String locationSetting = value.getAsString(
+                                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                        // A copy, so the caller's row is left as it was
+                        value = new ContentValues(value);
+                        value.remove(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                        Long locationId = locationIds.get(locationSetting);
+                        if (null == locationId) {
+                            locationId = findLocation(db, locationSetting);
+                            if (-1 == locationId) {
+                                throw new IllegalArgumentException(
+                                        "Unknown location: " + locationSetting);
+                            }
+                            locationIds.put(locationSetting, locationId);
+                        }
+                        value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                    }
+                    if (writer.replace(value)) {
+                        returnCount++;
+                        addChangedDay(changedDays, value);
+                    } else {
+                        mUnchangedRows.incrementAndGet();
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            String pruneSelection = WeatherContract.WeatherEntry.COLUMN_DATE + " < ?";
+            String[] pruneSelectionArgs = new String[]{Long.toString(pruneBeforeDate)};
+            addChangedDays(changedDays, db, pruneSelection, pruneSelectionArgs);
+            db.delete(WeatherContract.WeatherEntry.TABLE_NAME, pruneSelection, pruneSelectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (locationAdded) {
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.LocationEntry.CONTENT_URI, null);
+        }
+        notifyWeatherChanged(db, changedDays);
+        // A sync is done writing, so this is the time to fold its log back into the database
+        mOpenHelper.checkpoint();
+        return returnCount;
+    }
+
+    /**
+     * @return the row id of the location with the given setting, or -1 if there isn't one
+     */
+    private static long findLocation(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
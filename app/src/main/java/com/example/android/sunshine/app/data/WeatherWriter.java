@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.TimeZone;
+
+/**
+ * Writes weather rows for the provider's batch operations through statements that are compiled
+ * once per batch, instead of having SQLiteDatabase build and prepare the SQL again for every
+ * row.  Dates are normalized without allocating anything per row.
+ *
+ * A writer is not thread safe.  Create one per batch, inside the batch's transaction, and
+ * close it before the transaction ends.
+ */
+class WeatherWriter {
+
+    // The columns every weather row must have, other than its key (location and date).
+    private static final String[] DATA_COLUMNS = {
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // INSERT INTO weather (location_id, date, short_desc, ...) VALUES (?, ?, ?, ...)
+    private static final String SQL_INSERT;
+    // The same, but leaving a row already stored for the location and date alone
+    private static final String SQL_INSERT_IF_MISSING;
+    // UPDATE weather SET short_desc = ?1, ... WHERE location_id = ?9 AND date = ?10
+    //     AND (short_desc IS NOT ?1 OR ...).  TestDb checks its query plan.
+    static final String SQL_UPDATE_IF_CHANGED;
+
+    static {
+        StringBuilder columns = new StringBuilder(" (")
+                .append(WeatherEntry.COLUMN_LOC_KEY).append(", ")
+                .append(WeatherEntry.COLUMN_DATE);
+        StringBuilder update = new StringBuilder("UPDATE ")
+                .append(WeatherEntry.TABLE_NAME).append(" SET ");
+        StringBuilder changed = new StringBuilder();
+        for (int i = 0; i < DATA_COLUMNS.length; i++) {
+            columns.append(", ").append(DATA_COLUMNS[i]);
+            update.append(i == 0 ? "" : ", ").append(DATA_COLUMNS[i]).append(" = ?").append(i + 1);
+            changed.append(i == 0 ? "" : " OR ").append(DATA_COLUMNS[i]).append(" IS NOT ?")
+                    .append(i + 1);
+        }
+        columns.append(") VALUES (?, ?");
+        for (int i = 0; i < DATA_COLUMNS.length; i++) {
+            columns.append(", ?");
+        }
+        columns.append(")");
+        // The statement's conflict clause overrides the table's ON CONFLICT REPLACE
+        SQL_INSERT = "INSERT INTO " + WeatherEntry.TABLE_NAME + columns;
+        SQL_INSERT_IF_MISSING = "INSERT OR IGNORE INTO " + WeatherEntry.TABLE_NAME + columns;
+        SQL_UPDATE_IF_CHANGED = update.append(" WHERE ")
+                .append(WeatherEntry.COLUMN_LOC_KEY).append(" = ?")
+                .append(DATA_COLUMNS.length + 1).append(" AND ")
+                .append(WeatherEntry.COLUMN_DATE).append(" = ?")
+                .append(DATA_COLUMNS.length + 2).append(" AND (")
+                .append(changed).append(")").toString();
+    }
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mInsert;
+    private final SQLiteStatement mInsertIfMissing;
+    private final SQLiteStatement mUpdateIfChanged;
+    private final TimeZone mTimeZone = JulianDay.getDefaultZone();
+
+    WeatherWriter(SQLiteDatabase db) {
+        mDb = db;
+        mInsert = db.compileStatement(SQL_INSERT);
+        mInsertIfMissing = db.compileStatement(SQL_INSERT_IF_MISSING);
+        mUpdateIfChanged = db.compileStatement(SQL_UPDATE_IF_CHANGED);
+    }
+
+    /**
+     * Inserts a weather row, replacing any row already stored for the same location and date.
+     * The date in values is normalized in place, as {@link WeatherProvider#insert} does.
+     *
+     * @return the row id, or -1 on failure
+     */
+    long insert(ContentValues values) {
+        if (!isComplete(values)) {
+            // Let SQLiteDatabase sort out (or reject) a partial row.
+            normalizeDate(values);
+            return mDb.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+        long date = normalizeDate(values);
+        mInsert.bindLong(1, values.getAsLong(WeatherEntry.COLUMN_LOC_KEY));
+        mInsert.bindLong(2, date);
+        bindDataColumns(mInsert, values, 3);
+        return mInsert.executeInsert();
+    }
+
+    /**
+     * Stores the weather in values for its location and date.  A row already stored for that
+     * day is updated in place, keeping its _id, and left untouched if nothing in it changed.
+     * The date in values is normalized in place.
+     *
+     * @return true if the stored weather changed, false if it was already there as given
+     */
+    boolean replace(ContentValues values) {
+        long date = normalizeDate(values);
+        if (!isComplete(values)) {
+            // Can't tell whether a partial row changes anything, so assume it does.
+            return mDb.update(WeatherEntry.TABLE_NAME, values,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[]{values.getAsString(WeatherEntry.COLUMN_LOC_KEY),
+                            Long.toString(date)}) > 0
+                    || mDb.insert(WeatherEntry.TABLE_NAME, null, values) != -1;
+        }
+        long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        bindDataColumns(mUpdateIfChanged, values, 1);
+        mUpdateIfChanged.bindLong(DATA_COLUMNS.length + 1, locationId);
+        mUpdateIfChanged.bindLong(DATA_COLUMNS.length + 2, date);
+        if (mUpdateIfChanged.executeUpdateDelete() > 0) {
+            return true;
+        }
+        // Either the day is new, or it's stored exactly as given
+        mInsertIfMissing.bindLong(1, locationId);
+        mInsertIfMissing.bindLong(2, date);
+        bindDataColumns(mInsertIfMissing, values, 3);
+        return mInsertIfMissing.executeInsert() != -1;
+    }
+
+    void close() {
+        mInsert.close();
+        mInsertIfMissing.close();
+        mUpdateIfChanged.close();
+    }
+
+    private static boolean isComplete(ContentValues values) {
+        if (null == values.get(WeatherEntry.COLUMN_LOC_KEY)
+                || null == values.get(WeatherEntry.COLUMN_DATE)) {
+            return false;
+        }
+        for (String column : DATA_COLUMNS) {
+            if (null == values.get(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void bindDataColumns(SQLiteStatement statement, ContentValues values,
+                                        int firstIndex) {
+        // Column order must match DATA_COLUMNS
+        statement.bindString(firstIndex, values.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+        statement.bindLong(firstIndex + 1, values.getAsLong(WeatherEntry.COLUMN_WEATHER_ID));
+        statement.bindDouble(firstIndex + 2, values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+        statement.bindDouble(firstIndex + 3, values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        statement.bindDouble(firstIndex + 4, values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY));
+        statement.bindDouble(firstIndex + 5, values.getAsDouble(WeatherEntry.COLUMN_PRESSURE));
+        statement.bindDouble(firstIndex + 6, values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED));
+        statement.bindDouble(firstIndex + 7, values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+    }
+
+    /**
+     * Same as {@link WeatherContract#normalizeDate(long)}, but without looking up the time zone
+     * for every row.
+     *
+     * @return the normalized date, or 0 if values has no date
+     */
+    private long normalizeDate(ContentValues values) {
+        Long dateValue = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        if (null == dateValue) {
+            return 0;
+        }
+        long date = JulianDay.normalize(dateValue, mTimeZone);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        return date;
+    }
+}
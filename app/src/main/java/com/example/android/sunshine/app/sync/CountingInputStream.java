@@ -0,0 +1,50 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A pass-through stream that counts how many bytes have been read through it.  The sync
+ * adapter puts one either side of the decompressor so it can report how much was actually
+ * transferred against how much JSON that turned into.
+ */
+class CountingInputStream extends FilterInputStream {
+    private long mCount;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        if (read > 0) {
+            mCount += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        long skipped = super.skip(byteCount);
+        mCount += skipped;
+        return skipped;
+    }
+
+    /**
+     * @return the number of bytes read or skipped so far
+     */
+    long getCount() {
+        return mCount;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.JulianDay;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.TimeZone;
+import java.util.Vector;
+
+/**
+ * Pull parser for the OpenWeatherMap daily forecast response.
+ *
+ * Rather than copying the whole body into a String and building a JSONObject tree from it, the
+ * forecast is read token by token straight off the connection's stream, and every day is turned
+ * into a weather ContentValues row as soon as its closing brace is read.  Only the rows we are
+ * going to insert are ever held in memory.
+ *
+ * The location key is not known while parsing (the location row may not exist yet), so callers
+ * stamp {@link WeatherContract.WeatherEntry#COLUMN_LOC_KEY} onto the rows once they have it.
+ */
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    private final int mJulianStartDay;
+    // OWM returns daily forecasts in order starting with the current day, so the date of each
+    // row is derived from its position in the list rather than parsed.
+    private final TimeZone mTimeZone = JulianDay.getDefaultZone();
+
+    private int mMessageCode = HttpURLConnection.HTTP_OK;
+    private boolean mHasCity;
+    private boolean mHasList;
+    private String mCityName;
+    private double mCityLatitude;
+    private double mCityLongitude;
+    private final Vector<ContentValues> mWeatherValues = new Vector<ContentValues>();
+
+    /**
+     * @param julianStartDay the Julian day of the first entry in the forecast list
+     */
+    ForecastJsonParser(int julianStartDay) {
+        mJulianStartDay = julianStartDay;
+    }
+
+    /**
+     * Reads the forecast from the given stream and closes it.  Parsing stops as soon as the
+     * response reports a message code other than 200.
+     *
+     * @throws MalformedJsonException if the body isn't a forecast we understand
+     * @throws IOException if the stream could not be read
+     */
+    void parse(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    // cod is sent as a string on success and a number on some errors;
+                    // JsonReader coerces either.
+                    mMessageCode = reader.nextInt();
+                    if (mMessageCode != HttpURLConnection.HTTP_OK) {
+                        return;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader);
+                } else if (OWM_LIST.equals(name)) {
+                    readList(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!mHasCity || !mHasList) {
+                throw new MalformedJsonException("Forecast is missing its city or list");
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports a token of the wrong type this way; to us it's just bad data.
+            MalformedJsonException malformed = new MalformedJsonException(e.getMessage());
+            malformed.initCause(e);
+            throw malformed;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readCity(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                mCityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        mCityLatitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        mCityLongitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (null == mCityName) {
+            throw new MalformedJsonException("City is missing its name");
+        }
+        mHasCity = true;
+    }
+
+    private void readList(JsonReader reader) throws IOException {
+        reader.beginArray();
+        int day = 0;
+        while (reader.hasNext()) {
+            mWeatherValues.add(readDay(reader, day++));
+        }
+        reader.endArray();
+        mHasList = true;
+    }
+
+    private ContentValues readDay(JsonReader reader, int day) throws IOException {
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        String description = null;
+        int weatherId = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                // Truncate like JSONObject.getInt did, in case the API ever sends a fraction
+                humidity = (int) reader.nextDouble();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (null == description) {
+            throw new MalformedJsonException("Forecast day " + day + " has no weather");
+        }
+
+        // Cheating to convert this to UTC time, which is what we want anyhow
+        long dateTime = JulianDay.toMillis(mJulianStartDay + day, mTimeZone);
+
+        ContentValues weatherValues = new ContentValues();
+
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return weatherValues;
+    }
+
+    /**
+     * @return the "cod" reported by the server, or 200 if it didn't send one
+     */
+    int getMessageCode() {
+        return mMessageCode;
+    }
+
+    String getCityName() {
+        return mCityName;
+    }
+
+    double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    double getCityLongitude() {
+        return mCityLongitude;
+    }
+
+    /**
+     * @return one row per forecast day, in order, without a location key
+     */
+    Vector<ContentValues> getWeatherValues() {
+        return mWeatherValues;
+    }
+}
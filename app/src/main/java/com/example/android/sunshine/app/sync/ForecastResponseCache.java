@@ -0,0 +1,317 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * On-disk cache of OpenWeatherMap forecast responses, one entry per request URL (and so per
+ * location query).
+ *
+ * Each entry keeps the last response body along with the validators and freshness information
+ * the server sent with it.  The sync adapter uses that to skip the network entirely while the
+ * response is still fresh, and otherwise to make a conditional request so that an unchanged
+ * forecast comes back as a bodiless 304.
+ *
+ * Because OWM dates are positional (the first entry is "today"), every entry also records the
+ * Julian day the body was fetched on, so a cached body always parses to the same dates.
+ */
+class ForecastResponseCache {
+    private static final String LOG_TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "forecast";
+    private static final String BODY_SUFFIX = ".json";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Bump this if the layout of the .meta file changes; older entries are then ignored.
+    private static final int META_VERSION = 1;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    private final File mDirectory;
+
+    /**
+     * Validators and freshness for one cached response.
+     */
+    static final class Entry {
+        final String key;
+        final String eTag;
+        final long lastModified;
+        final long expires;
+        final int julianStartDay;
+
+        Entry(String key, String eTag, long lastModified, long expires, int julianStartDay) {
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+            this.julianStartDay = julianStartDay;
+        }
+
+        /**
+         * @return true if the server said this response could be reused without revalidation
+         * until some time after now.
+         */
+        boolean isFresh(long now) {
+            return now < expires;
+        }
+    }
+
+    ForecastResponseCache(Context context) {
+        mDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * @return the cached entry for the url, or null if there isn't a usable one.
+     */
+    Entry get(String url) {
+        String key = keyFor(url);
+        File meta = new File(mDirectory, key + META_SUFFIX);
+        if (!meta.exists() || !new File(mDirectory, key + BODY_SUFFIX).exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)));
+            if (in.readInt() != META_VERSION) {
+                return null;
+            }
+            String eTag = in.readUTF();
+            long lastModified = in.readLong();
+            long expires = in.readLong();
+            int julianStartDay = in.readInt();
+            return new Entry(key, eTag.length() == 0 ? null : eTag, lastModified, expires,
+                    julianStartDay);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read cache entry " + key, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Adds If-None-Match / If-Modified-Since to a request that hasn't been connected yet.
+     */
+    void addConditionalHeaders(HttpURLConnection connection, Entry entry) {
+        if (null == entry) {
+            return;
+        }
+        if (null != entry.eTag) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, entry.eTag);
+        }
+        if (entry.lastModified > 0) {
+            connection.setIfModifiedSince(entry.lastModified);
+        }
+    }
+
+    /**
+     * Records the freshness of a 304 response against an existing entry, keeping its body.
+     *
+     * @return the updated entry
+     */
+    Entry refresh(Entry entry, HttpURLConnection connection) {
+        String eTag = connection.getHeaderField(HEADER_ETAG);
+        long lastModified = connection.getLastModified();
+        Entry refreshed = new Entry(entry.key,
+                null != eTag ? eTag : entry.eTag,
+                lastModified > 0 ? lastModified : entry.lastModified,
+                expiresFor(connection),
+                entry.julianStartDay);
+        try {
+            writeMeta(refreshed);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to refresh cache entry " + entry.key, e);
+        }
+        return refreshed;
+    }
+
+    /**
+     * @return a stream over the cached body of the entry
+     */
+    InputStream openBody(Entry entry) throws IOException {
+        return new BufferedInputStream(new FileInputStream(new File(mDirectory,
+                entry.key + BODY_SUFFIX)));
+    }
+
+    /**
+     * Wraps the body of a 200 response so that it is copied to disk as it is read.  The copy
+     * only replaces the cached entry once {@link Recorder#commit()} is called, so a response
+     * that fails to parse never ends up in the cache.
+     */
+    Recorder record(String url, HttpURLConnection connection, InputStream body,
+                    int julianStartDay) {
+        String cacheControl = connection.getHeaderField(HEADER_CACHE_CONTROL);
+        if (null != cacheControl && cacheControl.contains("no-store")) {
+            return new Recorder(body, null, null);
+        }
+        String key = keyFor(url);
+        Entry entry = new Entry(key, connection.getHeaderField(HEADER_ETAG),
+                connection.getLastModified(), expiresFor(connection), julianStartDay);
+        OutputStream out = null;
+        if (mDirectory.isDirectory() || mDirectory.mkdirs()) {
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(
+                        new File(mDirectory, key + TEMP_SUFFIX)));
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to cache response for " + key, e);
+            }
+        }
+        return new Recorder(body, out, entry);
+    }
+
+    /**
+     * A pass-through stream that tees everything read into a temporary cache file.
+     */
+    final class Recorder extends FilterInputStream {
+        private OutputStream mOut;
+        private final Entry mEntry;
+
+        private Recorder(InputStream in, OutputStream out, Entry entry) {
+            super(in);
+            mOut = out;
+            mEntry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && null != mOut) {
+                try {
+                    mOut.write(b);
+                } catch (IOException e) {
+                    abort();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0 && null != mOut) {
+                try {
+                    mOut.write(buffer, offset, read);
+                } catch (IOException e) {
+                    abort();
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Makes what has been read so far the cached body for this url.
+         */
+        void commit() {
+            if (null == mOut) {
+                return;
+            }
+            File temp = new File(mDirectory, mEntry.key + TEMP_SUFFIX);
+            try {
+                mOut.close();
+                mOut = null;
+                if (!temp.renameTo(new File(mDirectory, mEntry.key + BODY_SUFFIX))) {
+                    throw new IOException("Unable to rename " + temp);
+                }
+                writeMeta(mEntry);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to commit cache entry " + mEntry.key, e);
+                temp.delete();
+            }
+        }
+
+        /**
+         * Throws away what has been recorded, leaving any previous entry in place.
+         */
+        void abort() {
+            if (null == mOut) {
+                return;
+            }
+            closeQuietly(mOut);
+            mOut = null;
+            new File(mDirectory, mEntry.key + TEMP_SUFFIX).delete();
+        }
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(mDirectory, entry.key + META_SUFFIX))));
+        try {
+            out.writeInt(META_VERSION);
+            out.writeUTF(null == entry.eTag ? "" : entry.eTag);
+            out.writeLong(entry.lastModified);
+            out.writeLong(entry.expires);
+            out.writeInt(entry.julianStartDay);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Works out until when a response may be reused without asking the server, preferring
+     * Cache-Control max-age over Expires.  Responses the server doesn't want reused are
+     * treated as already expired, so they are always revalidated.
+     */
+    static long expiresFor(HttpURLConnection connection) {
+        String cacheControl = connection.getHeaderField(HEADER_CACHE_CONTROL);
+        if (null != cacheControl) {
+            if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) {
+                return 0;
+            }
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim();
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        long maxAge = Long.parseLong(directive.substring("max-age=".length()));
+                        return System.currentTimeMillis() + maxAge * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return connection.getExpiration();
+    }
+
+    static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every Android device has SHA-1 and UTF-8; fall back to something usable anyway.
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ArtPackStore;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Large icons for the weather notification, rendered at the notification's size ahead of time.
+ *
+ * Before a day's notification is due, the icon for every condition in the coming forecast is
+ * rendered and written to the cache directory, so that when the notification goes up its icon is
+ * a small file that is already the right size.  Only those icons are kept.  Posting the notification never waits for art to be fetched: if
+ * the icon isn't ready, the notification makes do with the built in art, decoded at the
+ * notification's size rather than in full.
+ */
+final class NotificationIcons {
+    private static final String LOG_TAG = NotificationIcons.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "notification_icons";
+    private static final String ICON_SUFFIX = ".png";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Enough for every condition in an art pack
+    private static final int MEMORY_CACHE_SIZE = 16;
+    // Rendering is in the background, but it still holds up the art pack download
+    private static final long RENDER_TIMEOUT_SECONDS = 30;
+
+    private final Context mContext;
+    private final File mDirectory;
+    private final int mWidth;
+    private final int mHeight;
+    // The icons rendered or read since the sync adapter started, by key
+    private final LruCache<String, Bitmap> mIcons = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    NotificationIcons(Context context) {
+        mContext = context;
+        mDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        Resources resources = context.getResources();
+        @SuppressLint("InlinedApi")
+        int width = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int height = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @return the rendered large icon for the condition, or null if it hasn't been rendered.
+     * Reads at most a small file; never fetches or scales art.
+     */
+    Bitmap get(int weatherId) {
+        Object art = artFor(weatherId);
+        if (null == art) {
+            return null;
+        }
+        String key = keyFor(art);
+        Bitmap icon = mIcons.get(key);
+        if (null == icon) {
+            File file = new File(mDirectory, key + ICON_SUFFIX);
+            if (file.exists()) {
+                icon = BitmapFactory.decodeFile(file.getPath());
+                if (null != icon) {
+                    mIcons.put(key, icon);
+                }
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * @return the built in art for the condition at the notification's size, or null if there
+     * is none.  For when {@link #get(int)} has nothing; reads and scales a resource.
+     */
+    Bitmap decodeBuiltIn(int weatherId) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (-1 == artResourceId) {
+            return null;
+        }
+        Resources resources = mContext.getResources();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, artResourceId, options);
+        options.inJustDecodeBounds = false;
+        // Skip as many pixels as possible while decoding, then scale the rest of the way
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= mWidth
+                && options.outHeight / (sampleSize * 2) >= mHeight) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        Bitmap art = BitmapFactory.decodeResource(resources, artResourceId, options);
+        if (null == art || (art.getWidth() <= mWidth && art.getHeight() <= mHeight)) {
+            return art;
+        }
+        float scale = Math.min((float) mWidth / art.getWidth(),
+                (float) mHeight / art.getHeight());
+        Bitmap icon = Bitmap.createScaledBitmap(art,
+                Math.max(1, Math.round(art.getWidth() * scale)),
+                Math.max(1, Math.round(art.getHeight() * scale)), true);
+        if (icon != art) {
+            art.recycle();
+        }
+        return icon;
+    }
+
+    /**
+     * Renders the large icon for each of the conditions that hasn't been rendered already, and
+     * deletes every other icon.  This may fetch art, so call it from a background thread.
+     */
+    void prefetch(int[] weatherIds) {
+        long start = SystemClock.elapsedRealtime();
+        int rendered = 0;
+        // Most days share their condition with another, and one failure is enough
+        Set<String> tried = new HashSet<>();
+        for (int weatherId : weatherIds) {
+            Object art = artFor(weatherId);
+            if (null == art) {
+                continue;
+            }
+            String key = keyFor(art);
+            if (!tried.add(key) || null != mIcons.get(key)
+                    || new File(mDirectory, key + ICON_SUFFIX).exists()) {
+                continue;
+            }
+            Bitmap icon = render(art);
+            if (null != icon) {
+                mIcons.put(key, icon);
+                write(key, icon);
+                rendered++;
+            }
+        }
+        Log.d(LOG_TAG, "Rendered " + rendered + " of " + tried.size() + " icons in "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+        deleteAllBut(tried);
+    }
+
+    // The keys change with the art pack, the icon size and the build, so nothing else would
+    // clear out the icons they leave behind
+    private void deleteAllBut(Set<String> keys) {
+        File[] files = mDirectory.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(ICON_SUFFIX)
+                    || !keys.contains(name.substring(0, name.length() - ICON_SUFFIX.length()))) {
+                file.delete();
+            }
+        }
+    }
+
+    private Bitmap render(Object art) {
+        RequestManager glide = Glide.with(mContext);
+        try {
+            return (art instanceof Integer ? glide.load((Integer) art) : glide.load((String) art))
+                    .asBitmap()
+                    .fitCenter()
+                    .into(mWidth, mHeight)
+                    .get(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            // Tried again after the next sync
+            Log.w(LOG_TAG, "Unable to render the icon from " + art, e);
+            if (art instanceof String) {
+                ArtPackStore.onLoadFailed((String) art);
+            }
+            return null;
+        }
+    }
+
+    private void write(String key, Bitmap icon) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(new File(mDirectory, key + ICON_SUFFIX))) {
+                throw new IOException("Unable to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to store the icon " + key, e);
+            temp.delete();
+        }
+    }
+
+    /**
+     * @return the art for the condition, as a resource id or a url, or null if there is none
+     */
+    private Object artFor(int weatherId) {
+        if (Utility.usingLocalGraphics(mContext)) {
+            int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+            return -1 == artResourceId ? null : artResourceId;
+        }
+        // The stored copy of the art pack, where there is one
+        return Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+    }
+
+    // Changes with the art, the art pack, the icon size and the build, which may bring new art
+    private String keyFor(Object art) {
+        return ForecastResponseCache.keyFor(art + "@" + mWidth + "x" + mHeight + "#"
+                + BuildConfig.VERSION_CODE);
+    }
+}
@@ -2,13 +2,11 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -18,7 +16,6 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -26,32 +23,40 @@ import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
-import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtPackStore;
 import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ForecastArt;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.JulianDay;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.example.android.sunshine.app.wear.SunshineWearIntentService;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -63,6 +68,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // The most forecasts we will download at the same time when syncing several locations.
+    private static final int MAX_PARALLEL_FETCHES = 3;
 
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
@@ -88,8 +95,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Outlives a single sync, so icons read once stay in memory
+    private final NotificationIcons mNotificationIcons;
+
+    // Bytes fetched over the network this sync, as transferred and after decompression.  The
+    // fetches run in parallel, so these are shared between them.
+    private final AtomicLong mTransferredBytes = new AtomicLong();
+    private final AtomicLong mDecodedBytes = new AtomicLong();
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
+        mNotificationIcons = new NotificationIcons(context);
     }
 
     @Override
@@ -100,16 +116,164 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         // longitude, in case we are syncing based on a new Place Picker API result.
         Context context = getContext();
         String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
+        String locationLatitude = null;
+        String locationLongitude = null;
+        if (Utility.isLocationLatLonAvailable(context)) {
+            locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
+            locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
+        }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        final int julianStartDay = JulianDay.fromMillis(System.currentTimeMillis(),
+                JulianDay.getDefaultZone());
+
+        // The preferred location is always synced first.  The saved locations the user picked
+        // come along for the ride.
+        List<Callable<ForecastFetch>> fetches = new ArrayList<Callable<ForecastFetch>>();
+        fetches.add(newFetch(locationQuery, locationLatitude, locationLongitude, julianStartDay));
+        Set<String> syncedLocations = Utility.getSyncedSavedLocations(context);
+        if (!syncedLocations.isEmpty()) {
+            // Saved locations are queried by where OWM said they were, since their setting may
+            // be a Place Picker address OWM doesn't understand.
+            for (SavedLocation savedLocation : getSavedLocations()) {
+                if (syncedLocations.contains(savedLocation.locationSetting)
+                        && !savedLocation.locationSetting.equals(locationQuery)) {
+                    fetches.add(newFetch(savedLocation.locationSetting, savedLocation.latitude,
+                            savedLocation.longitude, julianStartDay));
+                }
+            }
+        }
+
+        mTransferredBytes.set(0);
+        mDecodedBytes.set(0);
+
+        // Fetch and parse every location in parallel, but don't hammer the network (or OWM's
+        // rate limit) with more than a few connections at once.
+        List<ForecastFetch> results = new ArrayList<ForecastFetch>(fetches.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(fetches.size(), MAX_PARALLEL_FETCHES));
+        try {
+            for (Future<ForecastFetch> future : executor.invokeAll(fetches)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled.  Leave the data and status as they were.
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // fetchForecast handles its own errors, so this is a bug.
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        setSyncByteCounts(context, mTransferredBytes.get(), mDecodedBytes.get());
+
+        boolean stored = storeForecasts(results, julianStartDay);
+
+        // The location status is what the UI shows about the preferred location, so only
+        // that location gets to set it.
+        setLocationStatus(context, results.get(0).status);
+
+        if (stored) {
+            announceForecasts();
+        }
+
+        // Last, so nothing waits on it: until an image is stored, the widgets, wear and Muzei
+        // load it from the art pack's own url.  Once the pack is stored, this only checks it.
+        ArtPackStore.download(context);
+    }
+
+    private Callable<ForecastFetch> newFetch(final String locationSetting, final String latitude,
+                                             final String longitude, final int julianStartDay) {
+        return new Callable<ForecastFetch>() {
+            @Override
+            public ForecastFetch call() {
+                return fetchForecast(locationSetting, latitude, longitude, julianStartDay);
+            }
+        };
+    }
+
+    /**
+     * The outcome of fetching the forecast for a single location.
+     */
+    private static class ForecastFetch {
+        final String locationSetting;
+        @LocationStatus final int status;
+        // The new forecast to store, or null if there is nothing new to store
+        final ForecastJsonParser forecast;
+
+        ForecastFetch(String locationSetting, @LocationStatus int status,
+                      ForecastJsonParser forecast) {
+            this.locationSetting = locationSetting;
+            this.status = status;
+            this.forecast = forecast;
+        }
+    }
+
+    /**
+     * A location we have stored weather for.
+     */
+    private static class SavedLocation {
+        final String locationSetting;
+        // Where OWM placed the location, or null if that wasn't stored
+        final String latitude;
+        final String longitude;
+
+        SavedLocation(String locationSetting, String latitude, String longitude) {
+            this.locationSetting = locationSetting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    /**
+     * @return every location we have stored weather for.
+     */
+    private List<SavedLocation> getSavedLocations() {
+        List<SavedLocation> locations = new ArrayList<SavedLocation>();
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LONG},
+                null,
+                null,
+                null);
+        if (null != cursor) {
+            while (cursor.moveToNext()) {
+                boolean hasCoordinates = !cursor.isNull(1) && !cursor.isNull(2);
+                locations.add(new SavedLocation(cursor.getString(0),
+                        hasCoordinates ? String.valueOf(cursor.getDouble(1)) : null,
+                        hasCoordinates ? String.valueOf(cursor.getDouble(2)) : null));
+            }
+            cursor.close();
+        }
+        return locations;
+    }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+    /**
+     * Fetches and parses the forecast for one location.  This runs on a worker thread, so it
+     * only reads the database and never writes it; storing the result is left to
+     * {@link #storeForecasts}.
+     *
+     * @param latitude the latitude to query by, or null to query by the location setting
+     * @param longitude the longitude to query by, or null to query by the location setting
+     * @param julianStartDay the Julian day of the first day in a freshly fetched forecast
+     */
+    private ForecastFetch fetchForecast(String locationSetting, String latitude, String longitude,
+                                        int julianStartDay) {
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
 
         String format = "json";
         String units = "metric";
@@ -137,11 +301,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
             // service may not understand the location address provided by the Place Picker API
             // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
+            if (null != latitude && null != longitude) {
+                uriBuilder.appendQueryParameter(LAT_PARAM, latitude)
+                        .appendQueryParameter(LON_PARAM, longitude);
             } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+                uriBuilder.appendQueryParameter(QUERY_PARAM, locationSetting);
             }
 
             Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
@@ -152,234 +316,242 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             URL url = new URL(builtUri.toString());
 
+            // If the last response for this query is still fresh there's no need to ask again.
+            ForecastResponseCache cache = new ForecastResponseCache(getContext());
+            ForecastResponseCache.Entry cached = cache.get(url.toString());
+            if (null != cached && cached.isFresh(System.currentTimeMillis())) {
+                Log.d(LOG_TAG, "Cached forecast for " + locationSetting + " is still fresh");
+                return useCachedForecast(cache, cached, locationSetting);
+            }
+
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+            // Asking for the encoding ourselves turns off HttpURLConnection's transparent gzip
+            // handling, which we want: it lets us count the bytes on the wire and accept deflate.
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            cache.addConditionalHeaders(urlConnection, cached);
             urlConnection.connect();
 
-            // Read the input stream into a String
+            if (null != cached
+                    && urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing has changed since the cached response, so there's nothing to parse
+                // or write.
+                Log.d(LOG_TAG, "Forecast for " + locationSetting + " not modified");
+                return useCachedForecast(cache, cache.refresh(cached, urlConnection),
+                        locationSetting);
+            }
+
+            // Parse the forecast straight off the input stream, decompressing it as it goes and
+            // keeping a copy of it for next time.  An empty stream fails the parse with an
+            // EOFException, which we treat like any other I/O error.
             InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
                 // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+                return new ForecastFetch(locationSetting, LOCATION_STATUS_SERVER_DOWN, null);
             }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            CountingInputStream transferred = new CountingInputStream(inputStream);
+            CountingInputStream decoded = new CountingInputStream(
+                    decode(transferred, urlConnection.getContentEncoding()));
+            ForecastResponseCache.Recorder recorder = cache.record(url.toString(), urlConnection,
+                    decoded, julianStartDay);
+            ForecastFetch fetch = null;
+            try {
+                fetch = getWeatherDataFromJson(recorder, locationSetting, julianStartDay);
+            } finally {
+                if (null != fetch && null != fetch.forecast) {
+                    recorder.commit();
+                } else {
+                    recorder.abort();
+                }
+                mTransferredBytes.addAndGet(transferred.getCount());
+                mDecodedBytes.addAndGet(decoded.getCount());
+                Log.d(LOG_TAG, "Forecast for " + locationSetting + " transferred "
+                        + transferred.getCount() + " bytes (" + decoded.getCount() + " decoded)");
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            return fetch;
+        } catch (MalformedJsonException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return new ForecastFetch(locationSetting, LOCATION_STATUS_SERVER_INVALID, null);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            return new ForecastFetch(locationSetting, LOCATION_STATUS_SERVER_DOWN, null);
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Wraps a response body in a decompressor matching its Content-Encoding, so it is inflated
+     * while it streams into the parser.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * "deflate" is meant to be zlib-wrapped, but plenty of servers send a raw deflate stream
+     * instead, so the first two bytes are checked for a zlib header to tell which it is.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+    static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(body);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            InputStream in = body.markSupported() ? body : new BufferedInputStream(body);
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            // A zlib header says the method is deflate, and makes a multiple of 31
+            boolean zlib = -1 != second && (first & 0x0F) == 8
+                    && ((first << 8) | second) % 31 == 0;
+            if (zlib) {
+                return new InflaterInputStream(in);
             }
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(in, inflater) {
+                @Override
+                public void close() throws IOException {
+                    // An Inflater we made isn't ended by the stream
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+        return body;
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+    /**
+     * Makes sure the forecast in a cached response is in the database.  The rows it holds
+     * were written when it was first fetched, so this only needs to parse the cached body
+     * again if they have since gone missing.
+     */
+    private ForecastFetch useCachedForecast(ForecastResponseCache cache,
+                                            ForecastResponseCache.Entry entry,
+                                            String locationSetting) throws IOException {
+        if (hasWeatherFor(locationSetting)) {
+            return new ForecastFetch(locationSetting, LOCATION_STATUS_OK, null);
+        }
+        return getWeatherDataFromJson(cache.openBody(entry), locationSetting,
+                entry.julianStartDay);
+    }
 
-                ContentValues weatherValues = new ContentValues();
+    /**
+     * @return true if there is weather stored for the location from today onwards.
+     */
+    private boolean hasWeatherFor(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                        WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (null == cursor) {
+            return false;
+        }
+        boolean hasWeather = cursor.moveToFirst();
+        cursor.close();
+        return hasWeather;
+    }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+    /**
+     * Read the forecast in JSON Format from the given stream and pull out the data we need to
+     * construct the Strings needed for the wireframes.
+     *
+     * The stream is handed to a {@link ForecastJsonParser}, which pulls one token at a time
+     * and builds the weather rows as it goes, so neither the raw response nor a JSONObject
+     * tree of it is ever held in memory.
+     *
+     * @param julianStartDay the Julian day of the first day in the forecast
+     */
+    private ForecastFetch getWeatherDataFromJson(InputStream forecastStream,
+                                                 String locationSetting,
+                                                 int julianStartDay)
+            throws IOException {
+
+        ForecastJsonParser parser = new ForecastJsonParser(julianStartDay);
+        parser.parse(forecastStream);
+
+        // do we have an error?
+        switch (parser.getMessageCode()) {
+            case HttpURLConnection.HTTP_OK:
+                return new ForecastFetch(locationSetting, LOCATION_STATUS_OK, parser);
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return new ForecastFetch(locationSetting, LOCATION_STATUS_INVALID, null);
+            default:
+                return new ForecastFetch(locationSetting, LOCATION_STATUS_SERVER_DOWN, null);
+        }
+    }
 
-                cVVector.add(weatherValues);
+    /**
+     * Writes every newly fetched forecast, and any location that isn't stored yet, to the
+     * database and prunes old days in a single provider call (and so a single transaction and
+     * change notification), however many locations were synced.
+     *
+     * @param julianStartDay today's Julian day; anything before it is pruned
+     * @return true if there was anything to write, and so anything to announce
+     */
+    private boolean storeForecasts(List<ForecastFetch> fetches, int julianStartDay) {
+        // Insert the new weather information into the database
+        Vector<ContentValues> cVVector = new Vector<ContentValues>();
+        List<ContentValues> locations = new ArrayList<ContentValues>();
+        for (ForecastFetch fetch : fetches) {
+            if (null == fetch.forecast) {
+                continue;
             }
-
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateWear();
-                updateMuzei();
-                notifyWeather();
+            ForecastJsonParser forecast = fetch.forecast;
+            // The provider adds the location, if it's new, in the same transaction as its
+            // weather, and points the weather at it by its setting.
+            ContentValues locationValues = new ContentValues();
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                    forecast.getCityName());
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                    fetch.locationSetting);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                    forecast.getCityLatitude());
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+                    forecast.getCityLongitude());
+            locations.add(locationValues);
+            for (ContentValues weatherValues : forecast.getWeatherValues()) {
+                weatherValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        fetch.locationSetting);
+                cVVector.add(weatherValues);
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        // add to database, replacing what we had and dropping old data so we don't build up an
+        // endless history, all in one go
+        if ( cVVector.size() > 0 ) {
+            ContentValues[] cvArray = new ContentValues[cVVector.size()];
+            cVVector.toArray(cvArray);
+            Bundle extras = new Bundle();
+            extras.putParcelableArray(WeatherContract.WeatherEntry.EXTRA_VALUES, cvArray);
+            extras.putParcelableArray(WeatherContract.WeatherEntry.EXTRA_LOCATIONS,
+                    locations.toArray(new ContentValues[locations.size()]));
+            extras.putLong(WeatherContract.WeatherEntry.EXTRA_PRUNE_BEFORE_DATE,
+                    JulianDay.toMillis(julianStartDay, JulianDay.getDefaultZone()));
+            getContext().getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.METHOD_REPLACE_FORECAST, null, extras);
         }
+        Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
+        return cVVector.size() > 0;
+    }
+
+    /**
+     * Lets everything that displays the weather outside the app know about the new forecast,
+     * once for the whole sync.
+     */
+    private void announceForecasts() {
+        updateWidgets();
+        updateWear();
+        updateMuzei();
+        notifyWeather();
+        // After the notification, which never waits for its icon, so the icons are ready for
+        // the next one
+        prefetchNotificationIcons();
+        // Picks up any art that couldn't be fetched last time
+        ForecastArt.preload(getContext());
     }
 
     private void updateWidgets() {
@@ -406,6 +578,42 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     .setClass(context, WeatherMuzeiSource.class));
     }
 
+    /**
+     * Renders the notification's large icon for each day of the preferred location's forecast,
+     * so it is ready by the time that day's notification goes up.  Only done on the last sync
+     * or so before a notification is due; the others would render icons nothing shows.
+     */
+    private void prefetchNotificationIcons() {
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!prefs.getBoolean(context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)))) {
+            return;
+        }
+        // The same check notifyWeather makes, a sync early
+        long lastNotification = prefs.getLong(context.getString(R.string.pref_last_notification), 0);
+        if (System.currentTimeMillis() - lastNotification < DAY_IN_MILLIS - SYNC_INTERVAL * 1000L) {
+            return;
+        }
+
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                Utility.getPreferredLocation(context), System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID}, null, null, null);
+        if (null == cursor) {
+            return;
+        }
+        int[] weatherIds = new int[cursor.getCount()];
+        try {
+            while (cursor.moveToNext()) {
+                weatherIds[cursor.getPosition()] = cursor.getInt(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        mNotificationIcons.prefetch(weatherIds);
+    }
+
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
@@ -421,6 +629,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
+                long start = System.nanoTime();
                 String locationQuery = Utility.getPreferredLocation(context);
 
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
@@ -436,33 +645,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+
+                    // Retrieve the large icon, rendered on an earlier sync.  If it couldn't be,
+                    // don't hold the notification up for it.
+                    long iconStart = System.nanoTime();
+                    Bitmap largeIcon = mNotificationIcons.get(weatherId);
+                    boolean prerendered = null != largeIcon;
+                    if (!prerendered) {
+                        largeIcon = mNotificationIcons.decodeBuiltIn(weatherId);
                     }
+                    long iconNanos = System.nanoTime() - iconStart;
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -502,6 +694,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
                     // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
                     mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+                    Log.d(LOG_TAG, "Notification posted in "
+                            + (System.nanoTime() - start) / 1000 + "us, icon "
+                            + (prerendered ? "prerendered" : "built in") + " in "
+                            + iconNanos / 1000 + "us");
 
                     //refreshing last sync
                     SharedPreferences.Editor editor = prefs.edit();
@@ -513,56 +709,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -654,6 +800,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         getSyncAccount(context);
     }
 
+    /**
+     * Stores how many bytes the last sync fetched, as transferred and once decompressed, where
+     * {@link Utility#getLastSyncTransferredBytes(Context)} and
+     * {@link Utility#getLastSyncDecodedBytes(Context)} can read them.  This function should not
+     * be called from the UI thread because it uses commit to write to the shared preferences.
+     */
+    static private void setSyncByteCounts(Context c, long transferredBytes, long decodedBytes) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences.Editor spe = sp.edit();
+        spe.putLong(c.getString(R.string.pref_last_sync_transferred_bytes), transferredBytes);
+        spe.putLong(c.getString(R.string.pref_last_sync_decoded_bytes), decodedBytes);
+        spe.commit();
+    }
+
     /**
      * Sets the location status into shared preference.  This function should not be called from
      * the UI thread because it uses commit to write to the shared preferences.
@@ -116,6 +116,7 @@ public class SunshineWearIntentService extends IntentService implements
         putDataMap.putString(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, formattedMaxTemperature);
         putDataMap.putString(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, formattedMinTemperature);
         putDataMap.putAsset(SunshineWearValues.WEATHER_IMAGE, asset);
+        putDataMap.putLong(SunshineWearValues.SENT_AT, System.currentTimeMillis());
 
         PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
         PendingResult<DataApi.DataItemResult> pendingResult =
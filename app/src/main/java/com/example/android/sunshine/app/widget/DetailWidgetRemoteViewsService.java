@@ -13,7 +13,7 @@ import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.ArtPackStore;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
@@ -100,14 +100,18 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
+                    // Only as big as the widget shows it; the bitmap is sent to the launcher
+                    int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
                     try {
                         weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
                                 .load(weatherArtResourceUrl)
                                 .asBitmap()
                                 .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
+                                .fitCenter()
+                                .into(iconSize, iconSize).get();
                     } catch (InterruptedException | ExecutionException e) {
                         Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                        ArtPackStore.onLoadFailed(weatherArtResourceUrl);
                     }
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
@@ -0,0 +1,155 @@
+package com.example.android.sunshine.app.data;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks JulianDay against the android.text.format.Time calls it replaces, in a handful of
+ * zones either side of UTC, with and without daylight saving, across every day from 2010 to
+ * 2030 and every half hour of 2016 and 2017.  Time only exists on a device, so this is an
+ * instrumentation test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JulianDayTest {
+    private static final String LOG_TAG = JulianDayTest.class.getSimpleName();
+
+    private static final String[] ZONES = {
+            "UTC",
+            "America/Los_Angeles",
+            "America/New_York",
+            "Europe/London",
+            "Europe/Berlin",
+            "Asia/Kolkata",
+            "Asia/Tokyo",
+            "Australia/Sydney",
+            "Pacific/Auckland"
+    };
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+    private static final long DAY_IN_MILLIS = 24 * HOUR_IN_MILLIS;
+    // 2010-01-01 and 2030-01-01 UTC
+    private static final long START = 1262304000000L;
+    private static final long END = 1893456000000L;
+    // 2016-01-01 and 2018-01-01 UTC
+    private static final long RECENT_START = 1451606400000L;
+    private static final long RECENT_END = 1514764800000L;
+
+    @Test
+    public void fromMillisMatchesTime() throws Exception {
+        for (String zoneId : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            Time time = new Time(zoneId);
+            // Either side of every half hour catches every local midnight, and every daylight
+            // saving change, over a couple of years
+            for (long millis = RECENT_START; millis < RECENT_END; millis += HOUR_IN_MILLIS / 2) {
+                for (long instant = millis - 1; instant <= millis; instant++) {
+                    time.set(instant);
+                    assertEquals(zoneId + " " + instant,
+                            Time.getJulianDay(instant, time.gmtoff),
+                            JulianDay.fromMillis(instant, zone));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void toMillisMatchesTime() throws Exception {
+        for (String zoneId : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            Time time = new Time(zoneId);
+            int startDay = Time.getJulianDay(START, 0);
+            int endDay = Time.getJulianDay(END, 0);
+            for (int julianDay = startDay; julianDay < endDay; julianDay++) {
+                assertEquals(zoneId + " " + julianDay,
+                        time.setJulianDay(julianDay), JulianDay.toMillis(julianDay, zone));
+            }
+        }
+    }
+
+    @Test
+    public void normalizeMatchesTime() throws Exception {
+        TimeZone zone = TimeZone.getDefault();
+        for (long millis = START; millis < END; millis += DAY_IN_MILLIS / 3 + 12345) {
+            assertEquals(TimeZone.getDefault().getID() + " " + millis,
+                    normalizeWithTime(millis), JulianDay.normalize(millis, zone));
+        }
+    }
+
+    @Test
+    public void defaultZoneIsLookedUpAgainAfterAChange() throws Exception {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            JulianDay.onDefaultZoneChanged();
+            assertEquals("Asia/Tokyo", JulianDay.getDefaultZone().getID());
+            assertSame(JulianDay.getDefaultZone(), JulianDay.getDefaultZone());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+            JulianDay.onDefaultZoneChanged();
+            assertEquals("Europe/Berlin", JulianDay.getDefaultZone().getID());
+        } finally {
+            TimeZone.setDefault(original);
+            JulianDay.onDefaultZoneChanged();
+        }
+    }
+
+    // The allocation counters are deprecated for profiling, but still count.
+    @SuppressWarnings("deprecation")
+    @Test
+    public void normalizeDateAllocatesNothing() throws Exception {
+        long sink = WeatherContract.normalizeDate(START);
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (long millis = START; millis < END; millis += DAY_IN_MILLIS) {
+            sink += WeatherContract.normalizeDate(millis);
+        }
+        Debug.stopAllocCounting();
+        assertEquals(0, Debug.getThreadAllocCount());
+        assertTrue(sink != 0);
+    }
+
+    // The per call cost of normalizing a date the old way and the new way
+    @Test
+    public void logNormalizeCost() throws Exception {
+        Benchmarks.assumeEnabled();
+        final int calls = 100000;
+        TimeZone zone = TimeZone.getDefault();
+        long sink = 0;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < calls; i++) {
+            sink += normalizeWithTime(START + i * HOUR_IN_MILLIS);
+        }
+        long timeNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < calls; i++) {
+            sink -= JulianDay.normalize(START + i * HOUR_IN_MILLIS, zone);
+        }
+        long julianDayNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertEquals(0, sink);
+        Log.i(LOG_TAG, "normalize: Time " + timeNanos / calls + "ns/call, JulianDay "
+                + julianDayNanos / calls + "ns/call");
+    }
+
+    // What WeatherContract.normalizeDate used to do
+    private static long normalizeWithTime(long millis) {
+        Time time = new Time();
+        time.set(millis);
+        int julianDay = Time.getJulianDay(millis, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+}
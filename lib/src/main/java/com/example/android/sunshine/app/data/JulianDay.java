@@ -0,0 +1,88 @@
+package com.example.android.sunshine.app.data;
+
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic for weather dates, giving the same results as the android.text.format.Time
+ * calls it replaces (Time.getJulianDay with a Time's gmtoff, and Time.setJulianDay) without
+ * creating a Time, or anything else, per call.
+ *
+ * Like Time, days are calendar days in a time zone.  Pass the zone in.  TimeZone.getDefault()
+ * returns a copy each time, so for the default zone use {@link #getDefaultZone()}, which looks
+ * it up once and again only after {@link #onDefaultZoneChanged()}.
+ */
+public final class JulianDay {
+
+    // The Julian day of January 1, 1970
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // The default zone, or null until it's next asked for
+    private static volatile TimeZone sDefaultZone;
+
+    private JulianDay() {
+    }
+
+    /**
+     * @return the default time zone, shared; don't modify it
+     */
+    public static TimeZone getDefaultZone() {
+        TimeZone zone = sDefaultZone;
+        if (null == zone) {
+            zone = TimeZone.getDefault();
+            sDefaultZone = zone;
+        }
+        return zone;
+    }
+
+    /**
+     * Call when the default time zone changes (Intent.ACTION_TIMEZONE_CHANGED), so
+     * {@link #getDefaultZone()} looks it up again.
+     */
+    public static void onDefaultZoneChanged() {
+        sDefaultZone = null;
+    }
+
+    /**
+     * Same as Time.getJulianDay(millis, gmtoff) for a Time set to millis in zone.
+     *
+     * @return the Julian day that the instant millis falls on in zone
+     */
+    public static int fromMillis(long millis, TimeZone zone) {
+        // Time truncates rather than floors, so this does too
+        return (int) ((millis + zone.getOffset(millis)) / DAY_IN_MILLIS) + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * Same as Time.setJulianDay(julianDay) for a Time in zone.
+     *
+     * @return the instant the Julian day starts (midnight) in zone
+     */
+    public static long toMillis(int julianDay, TimeZone zone) {
+        // Midnight on that day, as if zone were UTC
+        long wallMillis = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        int offset = zone.getOffset(wallMillis);
+        long millis = wallMillis - offset;
+        int actualOffset = zone.getOffset(millis);
+        if (actualOffset != offset) {
+            // A transition falls between the guess and midnight; use the offset on the far side
+            // of it, unless midnight is skipped by the transition, in which case the day starts
+            // at the transition itself.
+            long adjusted = wallMillis - actualOffset;
+            if (zone.getOffset(adjusted) == actualOffset) {
+                millis = adjusted;
+            }
+        }
+        return millis;
+    }
+
+    /**
+     * Same as {@link WeatherContract#normalizeDate(long)} did with a new Time per call.
+     *
+     * @return the start of the day that millis falls on in zone
+     */
+    public static long normalize(long millis, TimeZone zone) {
+        return toMillis(fromMillis(millis, zone), zone);
+    }
+}
@@ -7,4 +7,7 @@ package com.example.android.sunshine.app.data;
 public class SunshineWearValues {
     public static final String SUNSHINE_WEAR_DATA_PATH = "/sunshine_wear_data";
     public static final String WEATHER_IMAGE = "weather_image";
+    // When the phone sent the weather, in milliseconds since the epoch.  New on every sync, so
+    // the watch can tell a fresh item from the same one handed back when it reconnects.
+    public static final String SENT_AT = "sent_at";
 }
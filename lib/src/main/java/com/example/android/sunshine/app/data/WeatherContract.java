@@ -19,7 +19,6 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
 
 /**
  * Defines table and column names for the weather database.
@@ -48,10 +47,7 @@ public class WeatherContract {
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
         // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return JulianDay.normalize(startDate, JulianDay.getDefaultZone());
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -126,6 +122,32 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // ContentResolver.call method that stores a freshly synced forecast in one step: the
+        // rows in EXTRA_VALUES replace any stored for the same location and date, and every
+        // row dated before EXTRA_PRUNE_BEFORE_DATE is deleted, all in a single transaction.
+        // Only the days that actually changed are notified.  The result holds the number of
+        // rows added or changed under EXTRA_ROW_COUNT.
+        // A weather row may name its location by LocationEntry.COLUMN_LOCATION_SETTING rather
+        // than by COLUMN_LOC_KEY.  That location is looked up, or added from its row in
+        // EXTRA_LOCATIONS, in the same transaction.
+        public static final String METHOD_REPLACE_FORECAST = "replace_forecast";
+        // ContentValues[] of weather rows
+        public static final String EXTRA_VALUES = "values";
+        // ContentValues[] of location rows, for the locations EXTRA_VALUES names by setting
+        public static final String EXTRA_LOCATIONS = "locations";
+        // long date in milliseconds since the epoch
+        public static final String EXTRA_PRUNE_BEFORE_DATE = "prune_before_date";
+        public static final String EXTRA_ROW_COUNT = "row_count";
+
+        // ContentResolver.call method returning, as ints, how many change notifications the
+        // provider has scoped to a location or day (EXTRA_NOTIFICATION_COUNT), and how many
+        // weather writes (EXTRA_SILENT_WRITE_COUNT) and synced rows (EXTRA_UNCHANGED_ROW_COUNT)
+        // changed nothing and so sent no notification at all.
+        public static final String METHOD_GET_NOTIFICATION_COUNTS = "get_notification_counts";
+        public static final String EXTRA_NOTIFICATION_COUNT = "notification_count";
+        public static final String EXTRA_SILENT_WRITE_COUNT = "silent_write_count";
+        public static final String EXTRA_UNCHANGED_ROW_COUNT = "unchanged_row_count";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -0,0 +1,201 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that once the watch face has drawn a few frames, drawing more allocates nothing, in
+ * either mode, with or without weather.  Frames are drawn a second apart for a minute, then a
+ * minute apart for twelve hours, so every digit of the time changes along the way.
+ *
+ * When benchmarks are asked for, also logs what a frame costs with the interactive layer,
+ * without it, and in ambient mode; compare those across builds on the same watch.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WatchFaceRendererTest {
+    private static final String LOG_TAG = WatchFaceRendererTest.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final long SECOND_IN_MILLIS = 1000;
+    private static final long MINUTE_IN_MILLIS = 60 * SECOND_IN_MILLIS;
+    private static final int WARM_UP_FRAMES = 60;
+    // A second apart through every seconds digit, then a minute apart through every minute and
+    // hour digit
+    private static final int SECOND_FRAMES = 60;
+    private static final int MINUTE_FRAMES = 12 * 60;
+    private static final int FRAMES = 13 * 60 * 60;
+
+    private Context mContext;
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private Bitmap mWeatherImage;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mRenderer = new WatchFaceRenderer(mContext);
+        mRenderer.setRound(mContext.getResources(), false);
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+        mWeatherImage = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888);
+        mWeatherImage.eraseColor(Color.YELLOW);
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+        mWeatherImage.recycle();
+    }
+
+    @Test
+    public void timeFormat() {
+        TimeText timeText = new TimeText(new Paint());
+        assertEquals("0:05:09", format(timeText, 0, 5, 9, true));
+        assertEquals("11:59:59", format(timeText, 11, 59, 59, true));
+        assertEquals("7:30", format(timeText, 7, 30, 0, false));
+    }
+
+    @Test
+    public void interactiveFramesAllocateNothing() {
+        mRenderer.setWeather("Clear", "25°", "16°");
+        mRenderer.setWeatherImage(mWeatherImage);
+        assertEquals(0, countAllocations());
+    }
+
+    @Test
+    public void pendingFramesAllocateNothing() {
+        assertEquals(0, countAllocations());
+    }
+
+    @Test
+    public void ambientFramesAllocateNothing() {
+        mRenderer.setLowBitAmbient(true);
+        mRenderer.setAmbient(true);
+        mRenderer.setWeather("Rain", "12°", "8°");
+        mRenderer.setWeatherImage(mWeatherImage);
+        assertEquals(0, countAllocations());
+    }
+
+    @Test
+    public void lowBitAmbientFramesAreTwoColors() {
+        mRenderer.setLowBitAmbient(true);
+        mRenderer.setAmbient(true);
+        mRenderer.setWeather("Rain", "12°", "8°");
+        mRenderer.setWeatherImage(mWeatherImage);
+        mRenderer.draw(mCanvas, mBounds, System.currentTimeMillis());
+
+        int textColor = ContextCompat.getColor(mContext, R.color.digital_text);
+        int[] pixels = new int[SIZE * SIZE];
+        mBitmap.getPixels(pixels, 0, SIZE, 0, 0, SIZE, SIZE);
+        int lit = 0;
+        for (int pixel : pixels) {
+            if (pixel == textColor) {
+                lit++;
+            } else {
+                assertEquals("Error: A pixel was neither off nor fully on", Color.BLACK, pixel);
+            }
+        }
+        assertTrue("Error: Nothing was drawn", lit > 0);
+
+        // The weather image is drawn as an outline, at the size it's drawn in interactive mode,
+        // with its inside off
+        Resources resources = mContext.getResources();
+        int imageLeft = (int) resources.getDimension(R.dimen.digital_x_offset) + 80;
+        int imageTop = (int) resources.getDimension(R.dimen.digital_y_offset) + 80;
+        int imageSize = resources.getDimensionPixelSize(R.dimen.weather_image_size);
+        assertEquals(textColor, mBitmap.getPixel(imageLeft + 1, imageTop + imageSize / 2));
+        assertEquals(textColor,
+                mBitmap.getPixel(imageLeft + imageSize - 2, imageTop + imageSize / 2));
+        assertEquals(Color.BLACK,
+                mBitmap.getPixel(imageLeft + imageSize / 2, imageTop + imageSize / 2));
+    }
+
+    @Test
+    public void logLayeredAndDirectFrameTimes() {
+        Benchmarks.assumeEnabled();
+        mRenderer.setWeather("Clear", "25°", "16°");
+        mRenderer.setWeatherImage(mWeatherImage);
+
+        mRenderer.setLayerEnabled(false);
+        logFrameTimes("Direct");
+        mRenderer.setLayerEnabled(true);
+        logFrameTimes("Layered");
+
+        // The weather changing rebuilds the layer once, and no more
+        mRenderer.setWeather("Rain", "12°", "8°");
+        logFrameTimes("Layered after a weather change");
+
+        // Once a minute, from the ambient masks
+        mRenderer.setAmbient(true);
+        logFrameTimes("Ambient");
+        mRenderer.setLowBitAmbient(true);
+        logFrameTimes("Low-bit ambient");
+    }
+
+    private void logFrameTimes(String label) {
+        long now = System.currentTimeMillis();
+        long start = SystemClock.elapsedRealtimeNanos();
+        long drawCalls = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            drawCalls += mRenderer.getLastFrameDrawCalls();
+            now += SECOND_IN_MILLIS;
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        Log.i(LOG_TAG, label + ": mean " + elapsed / FRAMES / 1000 + "us a frame, "
+                + (float) drawCalls / FRAMES + " draw calls a frame");
+    }
+
+    // Allocations on this thread over a minute of seconds and twelve hours of minutes, after
+    // warming up.  The allocation counters are deprecated for profiling, but still count.
+    @SuppressWarnings("deprecation")
+    private int countAllocations() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += SECOND_IN_MILLIS;
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < SECOND_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += SECOND_IN_MILLIS;
+        }
+        for (int i = 0; i < MINUTE_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += MINUTE_IN_MILLIS;
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    private static String format(TimeText timeText, int hour, int minute, int second,
+                                 boolean showSeconds) {
+        int count = timeText.format(hour, minute, second, showSeconds);
+        return new String(timeText.getChars(), 0, count);
+    }
+}
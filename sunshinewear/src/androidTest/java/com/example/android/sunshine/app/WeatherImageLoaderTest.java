@@ -0,0 +1,81 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that weather images are decoded at the smallest power of two scale that still covers
+ * the size they're drawn at.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherImageLoaderTest {
+    // The size the phone sends
+    private static final int ASSET_SIZE = 100;
+
+    private Context mContext;
+    private WeatherImageLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mLoader = new WeatherImageLoader(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.release();
+    }
+
+    @Test
+    public void sampleSize() {
+        assertEquals(1, WeatherImageLoader.sampleSizeFor(100, 100, 100));
+        assertEquals(1, WeatherImageLoader.sampleSizeFor(100, 100, 51));
+        assertEquals(2, WeatherImageLoader.sampleSizeFor(100, 100, 50));
+        assertEquals(4, WeatherImageLoader.sampleSizeFor(100, 100, 20));
+        // Neither side may end up smaller than the target
+        assertEquals(1, WeatherImageLoader.sampleSizeFor(400, 60, 48));
+        assertEquals(1, WeatherImageLoader.sampleSizeFor(100, 100, 0));
+    }
+
+    @Test
+    public void decodesNoSmallerThanDrawn() {
+        int targetSize = mContext.getResources().getDimensionPixelSize(R.dimen.weather_image_size);
+        int expectedSize = ASSET_SIZE
+                / WeatherImageLoader.sampleSizeFor(ASSET_SIZE, ASSET_SIZE, targetSize);
+
+        Bitmap image = mLoader.decode(createAssetBytes());
+        assertNotNull("Error: The image wasn't decoded", image);
+        assertEquals(expectedSize, image.getWidth());
+        assertEquals(expectedSize, image.getHeight());
+        assertTrue("Error: The image is smaller than it's drawn",
+                image.getWidth() >= Math.min(targetSize, ASSET_SIZE));
+        image.recycle();
+    }
+
+    @Test
+    public void notAnImage() {
+        assertNull(mLoader.decode(new byte[] { 1, 2, 3 }));
+    }
+
+    // What the phone sends: a PNG, 100 pixels square
+    private static byte[] createAssetBytes() {
+        Bitmap bitmap = Bitmap.createBitmap(ASSET_SIZE, ASSET_SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.YELLOW);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.Benchmarks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the weather snapshot comes back as it was saved.  With benchmarks asked for, also
+ * logs how long loading it takes, which is time the watch face spends before it can draw its
+ * first frame.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherSnapshotTest {
+    private static final String LOG_TAG = WeatherSnapshotTest.class.getSimpleName();
+
+    private static final int LOADS = 20;
+
+    private Context mContext;
+    private Bitmap mImage;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        deleteSnapshot();
+        mImage = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888);
+        mImage.eraseColor(Color.YELLOW);
+        mImage.setPixel(3, 5, Color.BLUE);
+    }
+
+    @After
+    public void tearDown() {
+        mImage.recycle();
+        deleteSnapshot();
+    }
+
+    @Test
+    public void nothingSaved() {
+        assertNull(WeatherSnapshot.load(mContext));
+    }
+
+    @Test
+    public void roundTrip() {
+        long now = System.currentTimeMillis();
+        new WeatherSnapshot("Clear", "25°", "16°", mImage, "abc123", now).save(mContext);
+
+        WeatherSnapshot snapshot = WeatherSnapshot.load(mContext);
+        assertNotNull("Error: The snapshot wasn't loaded", snapshot);
+        assertEquals("Clear", snapshot.description);
+        assertEquals("25°", snapshot.maxTemp);
+        assertEquals("16°", snapshot.minTemp);
+        assertEquals("abc123", snapshot.imageDigest);
+        assertEquals(now, snapshot.receivedAt);
+        assertTrue("Error: The image came back different", mImage.sameAs(snapshot.image));
+    }
+
+    @Test
+    public void roundTripWithoutImage() {
+        new WeatherSnapshot("Rain", "12°", "8°", null, null, 1000).save(mContext);
+
+        WeatherSnapshot snapshot = WeatherSnapshot.load(mContext);
+        assertNotNull("Error: The snapshot wasn't loaded", snapshot);
+        assertEquals("Rain", snapshot.description);
+        assertNull(snapshot.image);
+        assertNull(snapshot.imageDigest);
+    }
+
+    @Test
+    public void staleness() {
+        long receivedAt = System.currentTimeMillis();
+        WeatherSnapshot snapshot = new WeatherSnapshot("Clear", "25°", "16°", null, null,
+                receivedAt);
+        assertFalse(snapshot.isStale(receivedAt + TimeUnit.HOURS.toMillis(1)));
+        assertTrue(snapshot.isStale(receivedAt + TimeUnit.HOURS.toMillis(3)));
+        // The clock went backwards, so how old it is can't be told
+        assertTrue(snapshot.isStale(receivedAt - TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    @Test
+    public void logLoadTime() {
+        Benchmarks.assumeEnabled();
+        new WeatherSnapshot("Clear", "25°", "16°", mImage, "abc123",
+                System.currentTimeMillis()).save(mContext);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < LOADS; i++) {
+            WeatherSnapshot.load(mContext).image.recycle();
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        Log.i(LOG_TAG, "Snapshot load: mean " + elapsed / LOADS / 1000 + "us");
+    }
+
+    private void deleteSnapshot() {
+        new File(mContext.getFilesDir(), "weather_snapshot").delete();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Draws the watch face in ambient mode, once a minute, from masks rendered ahead of time: one
+ * for each character of the time, one for the weather line, and an outline of the weather
+ * image, so the condition still shows without lighting up a block of pixels.  A frame is then
+ * only a handful of blits.
+ *
+ * On low-bit displays the masks are rendered without anti-aliasing and every pixel is made
+ * fully on or off, so nothing is left for the display to dither.  Masks are rebuilt, the next
+ * time they're drawn, after whatever they show changes.
+ */
+final class AmbientRenderer {
+    // Pixels at least this opaque are on
+    private static final int ALPHA_THRESHOLD = 0x80;
+    // How far into the weather image its outline reaches
+    private static final int OUTLINE_WIDTH = 2;
+
+    private final Paint mTimeTextPaint;
+    private final Paint mWeatherTextPaint;
+    private final TimeText mTimeText;
+    private final int mImageSize;
+    // Draws the masks in the text's color
+    private final Paint mMaskPaint;
+
+    private boolean mLowBit;
+
+    private final Bitmap[] mGlyphs = new Bitmap[TimeText.GLYPHS.length()];
+    // From the baseline to the top of the masks; negative
+    private float mGlyphTop;
+    private boolean mGlyphsValid;
+
+    private String mWeatherLine;
+    private Bitmap mWeatherLineMask;
+    private float mWeatherLineTop;
+    private boolean mWeatherLineValid;
+
+    private Bitmap mWeatherImage;
+    private Bitmap mWeatherImageMask;
+    private boolean mWeatherImageValid;
+
+    /**
+     * @param timeTextPaint the interactive time's paint, for its typeface and size
+     * @param weatherTextPaint the interactive weather line's paint
+     * @param timeText lays out the interactive time, so ambient time lines up with it
+     * @param imageSize the width and height the weather image is drawn at, in pixels
+     */
+    AmbientRenderer(Paint timeTextPaint, Paint weatherTextPaint, TimeText timeText,
+                    int imageSize) {
+        mTimeTextPaint = timeTextPaint;
+        mWeatherTextPaint = weatherTextPaint;
+        mTimeText = timeText;
+        mImageSize = imageSize;
+        mMaskPaint = new Paint();
+        mMaskPaint.setColor(timeTextPaint.getColor());
+    }
+
+    void setLowBit(boolean lowBit) {
+        if (mLowBit != lowBit) {
+            mLowBit = lowBit;
+            invalidate();
+        }
+    }
+
+    /**
+     * Call after the time's size or layout change.
+     */
+    void invalidateTime() {
+        mGlyphsValid = false;
+    }
+
+    /**
+     * @param weatherLine the text under the time
+     */
+    void setWeatherLine(String weatherLine) {
+        if (!weatherLine.equals(mWeatherLine)) {
+            mWeatherLine = weatherLine;
+            mWeatherLineValid = false;
+        }
+    }
+
+    void setWeatherImage(Bitmap weatherImage) {
+        if (mWeatherImage != weatherImage) {
+            mWeatherImage = weatherImage;
+            mWeatherImageValid = false;
+        }
+    }
+
+    private void invalidate() {
+        mGlyphsValid = false;
+        mWeatherLineValid = false;
+        mWeatherImageValid = false;
+    }
+
+    /**
+     * Draws a black background and H:MM with its baseline at y.
+     *
+     * @return the number of draw calls made
+     */
+    int drawTime(Canvas canvas, float x, float y, int hour, int minute) {
+        if (!mGlyphsValid) {
+            buildGlyphs();
+        }
+        canvas.drawColor(Color.BLACK);
+        return 1 + mTimeText.drawGlyphs(canvas, x, y + mGlyphTop, mGlyphs, mMaskPaint,
+                hour, minute);
+    }
+
+    /**
+     * Draws the weather line with its baseline at y.
+     *
+     * @return the number of draw calls made
+     */
+    int drawWeatherLine(Canvas canvas, float x, float y) {
+        if (!mWeatherLineValid) {
+            recycle(mWeatherLineMask);
+            Paint paint = newMaskTextPaint(mWeatherTextPaint);
+            mWeatherLineTop = paint.getFontMetrics().top;
+            mWeatherLineMask = renderText(mWeatherLine, paint, 0,
+                    (int) Math.ceil(paint.measureText(mWeatherLine)));
+            mWeatherLineValid = true;
+        }
+        canvas.drawBitmap(mWeatherLineMask, x, y + mWeatherLineTop, mMaskPaint);
+        return 1;
+    }
+
+    /**
+     * Draws the outline of the weather image, if there is one, with its top left at x, y.
+     *
+     * @return the number of draw calls made
+     */
+    int drawWeatherImage(Canvas canvas, float x, float y) {
+        if (!mWeatherImageValid) {
+            recycle(mWeatherImageMask);
+            mWeatherImageMask = null == mWeatherImage ? null : outline(mWeatherImage);
+            mWeatherImageValid = true;
+        }
+        if (null == mWeatherImageMask) {
+            return 0;
+        }
+        canvas.drawBitmap(mWeatherImageMask, x, y, mMaskPaint);
+        return 1;
+    }
+
+    /**
+     * Lets go of the masks.  They are built again if needed.
+     */
+    void release() {
+        for (int i = 0; i < mGlyphs.length; i++) {
+            recycle(mGlyphs[i]);
+            mGlyphs[i] = null;
+        }
+        recycle(mWeatherLineMask);
+        mWeatherLineMask = null;
+        recycle(mWeatherImageMask);
+        mWeatherImageMask = null;
+        invalidate();
+    }
+
+    private void buildGlyphs() {
+        Paint paint = newMaskTextPaint(mTimeTextPaint);
+        mGlyphTop = paint.getFontMetrics().top;
+        for (int i = 0; i < mGlyphs.length; i++) {
+            recycle(mGlyphs[i]);
+            mGlyphs[i] = renderText(TimeText.GLYPHS.substring(i, i + 1), paint,
+                    mTimeText.getGlyphOffset(i), (int) Math.ceil(mTimeText.getCellWidth(i)));
+        }
+        mGlyphsValid = true;
+    }
+
+    // Opaque white, so the mask's alpha is the text's coverage
+    private Paint newMaskTextPaint(Paint textPaint) {
+        Paint paint = new Paint(textPaint);
+        paint.setColor(Color.WHITE);
+        paint.setAntiAlias(!mLowBit);
+        return paint;
+    }
+
+    /**
+     * @return a mask of the text, with its baseline at the font's top below the mask's top
+     */
+    private Bitmap renderText(String text, Paint paint, float x, int width) {
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        int height = (int) Math.ceil(metrics.bottom - metrics.top);
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height),
+                Bitmap.Config.ARGB_8888);
+        new Canvas(bitmap).drawText(text, x, -metrics.top, paint);
+
+        if (mLowBit) {
+            int[] pixels = getPixels(bitmap);
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = isOn(pixels[i]) ? Color.WHITE : Color.TRANSPARENT;
+            }
+            setPixels(bitmap, pixels);
+        }
+        return toMask(bitmap);
+    }
+
+    /**
+     * @return a mask, at the size the image is drawn, of the opaque pixels of the image that are
+     * near a transparent one
+     */
+    private Bitmap outline(Bitmap image) {
+        Bitmap bitmap = Bitmap.createBitmap(mImageSize, mImageSize, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setFilterBitmap(true);
+        new Canvas(bitmap).drawBitmap(image, null, new Rect(0, 0, mImageSize, mImageSize), paint);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = getPixels(bitmap);
+        boolean[] on = new boolean[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            on[i] = isOn(pixels[i]);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                pixels[i] = on[i] && isEdge(on, width, height, x, y)
+                        ? Color.WHITE : Color.TRANSPARENT;
+            }
+        }
+        setPixels(bitmap, pixels);
+        return toMask(bitmap);
+    }
+
+    private static boolean isEdge(boolean[] on, int width, int height, int x, int y) {
+        for (int d = 1; d <= OUTLINE_WIDTH; d++) {
+            if (x - d < 0 || !on[y * width + x - d]
+                    || x + d >= width || !on[y * width + x + d]
+                    || y - d < 0 || !on[(y - d) * width + x]
+                    || y + d >= height || !on[(y + d) * width + x]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOn(int color) {
+        return Color.alpha(color) >= ALPHA_THRESHOLD;
+    }
+
+    private static int[] getPixels(Bitmap bitmap) {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0,
+                bitmap.getWidth(), bitmap.getHeight());
+        return pixels;
+    }
+
+    private static void setPixels(Bitmap bitmap, int[] pixels) {
+        bitmap.setPixels(pixels, 0, bitmap.getWidth(), 0, 0,
+                bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    // Keeps only the alpha, which is all a mask needs, and a quarter of the memory
+    private static Bitmap toMask(Bitmap bitmap) {
+        Bitmap mask = bitmap.extractAlpha();
+        bitmap.recycle();
+        return mask;
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (null != bitmap) {
+            bitmap.recycle();
+        }
+    }
+}
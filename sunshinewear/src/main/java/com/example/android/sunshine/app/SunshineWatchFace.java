@@ -20,23 +20,19 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
@@ -60,9 +56,7 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -79,9 +73,6 @@ import java.util.concurrent.TimeUnit;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
 
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
@@ -124,15 +115,16 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         private GoogleApiClient googleApiClient;
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        Paint timeTextPaint;
-        Paint weatherTextPaint;
-        Paint mImagePaint;
         boolean mAmbient;
-        Calendar mCalendar;
+        WatchFaceRenderer mRenderer;
+        WeatherImageLoader mWeatherImageLoader;
 
-        public void setWeatherImage(Bitmap weatherImage) {
+        public void setWeatherImage(Bitmap weatherImage, String digest) {
             this.weatherImage = weatherImage;
+            mWeatherImageDigest = digest;
+            mRenderer.setWeatherImage(weatherImage);
+            invalidate();
+            saveSnapshot();
         }
 
         Bitmap weatherImage;
@@ -140,21 +132,18 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         String maxTemp;
 
         String weatherDescription;
+        // The digest of the asset weatherImage came from, so an unchanged image isn't decoded
+        String mWeatherImageDigest;
+        // When the phone sent the weather being shown, taken from the data item, so the item
+        // handed back on every connect doesn't make old weather look new
+        long mWeatherReceivedAt;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
-        float mXOffset;
-        float mYOffset;
-
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
-        boolean mLowBitAmbient;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -167,14 +156,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setAcceptsTapEvents(true)
                     .build());
 
-            mBackgroundPaint = new Paint();
-            //referenced http://stackoverflow.com/a/32149275/2169923
-            mBackgroundPaint.setColor(ContextCompat.getColor(SunshineWatchFace.this, com.example.android.sunshine.app.R.color.background));
-
-            timeTextPaint = createTextPaint(ContextCompat.getColor(SunshineWatchFace.this, com.example.android.sunshine.app.R.color.digital_text), 0);
-            weatherTextPaint = createTextPaint(ContextCompat.getColor(SunshineWatchFace.this, com.example.android.sunshine.app.R.color.digital_text), SunshineWatchFace.this.getResources().getDimensionPixelSize(R.dimen.abc_text_size_small_material));
-            mImagePaint = new Paint();
-            mCalendar = Calendar.getInstance();
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this);
+            mWeatherImageLoader = new WeatherImageLoader(SunshineWatchFace.this);
 
             googleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
                     .addApi(Wearable.API)
@@ -182,6 +165,26 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .addOnConnectionFailedListener(this)
                     .build();
 
+            // Show the last weather we had straight away, and only bother the phone for more if
+            // it's old enough that the phone has probably synced since
+            long start = SystemClock.elapsedRealtimeNanos();
+            WeatherSnapshot snapshot = WeatherSnapshot.load(SunshineWatchFace.this);
+            Log.d("SunshineWatchFace", "Snapshot loaded in "
+                    + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + "us");
+            if (null != snapshot) {
+                weatherDescription = snapshot.description;
+                maxTemp = snapshot.maxTemp;
+                minTemp = snapshot.minTemp;
+                weatherImage = snapshot.image;
+                mWeatherImageDigest = snapshot.imageDigest;
+                mWeatherReceivedAt = snapshot.receivedAt;
+                mRenderer.setWeather(weatherDescription, maxTemp, minTemp);
+                mRenderer.setWeatherImage(weatherImage);
+                if (!snapshot.isStale(System.currentTimeMillis())) {
+                    return;
+                }
+            }
+
             //call to device for inital sync to have data to display.
             PutDataMapRequest putDataMapReq = PutDataMapRequest.create(getString(com.example.android.sunshine.app.R.string.wear_init_path));
             putDataMapReq.getDataMap().putLong("CurrentTime", System.currentTimeMillis());
@@ -204,20 +207,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
             releaseGoogleApiClient();
+            mRenderer.release();
+            mWeatherImageLoader.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor, float textSize) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            if (textSize != 0){
-                paint.setTextSize(textSize);
-            }
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -226,7 +220,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
                 googleApiClient.connect();
             } else {
@@ -261,21 +255,13 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? com.example.android.sunshine.app.R.dimen.digital_x_offset_round : com.example.android.sunshine.app.R.dimen.digital_x_offset);
-            mYOffset = resources.getDimension(isRound
-                    ? com.example.android.sunshine.app.R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
-            float textSize = resources.getDimension(isRound
-                    ? com.example.android.sunshine.app.R.dimen.digital_text_size_round : com.example.android.sunshine.app.R.dimen.digital_text_size);
-            timeTextPaint.setTextSize(textSize);
+            mRenderer.setRound(SunshineWatchFace.this.getResources(), insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false));
         }
 
         @Override
@@ -289,10 +275,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    timeTextPaint.setAntiAlias(!inAmbientMode);
-                    weatherTextPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode);
                 invalidate();
             }
 
@@ -326,39 +309,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            String time = mAmbient
-                    ? String.format("%d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE))
-                    : String.format("%d:%02d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE), mCalendar.get(Calendar.SECOND));
-            canvas.drawText(time, mXOffset, mYOffset, timeTextPaint);
-
-
-            if (null != weatherDescription)
-            {
-                String weatherInfo = String.format("%s %s/%s", weatherDescription, maxTemp, minTemp);
-                canvas.drawText(weatherInfo, mXOffset, (mYOffset + 60), weatherTextPaint);
-            }
-            else
-            {
-                canvas.drawText(getString(R.string.sync_pending), mXOffset, (mYOffset + 60), weatherTextPaint);
-            }
-            if (!mAmbient && null != weatherImage)
-            {
-                canvas.drawBitmap(weatherImage, mXOffset + 80, (mYOffset + 80), mImagePaint);
-            }
-
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
         }
 
         /**
@@ -451,67 +402,68 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         {
             if (SunshineWearValues.SUNSHINE_WEAR_DATA_PATH.equals(item.getUri().getPath())) {
                 DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+                String description = weatherDescription;
+                String max = maxTemp;
+                String min = minTemp;
                 if (dataMap.containsKey(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)) {
-                    weatherDescription = dataMap.getString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+                    description = dataMap.getString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
                 }
                 if (dataMap.containsKey(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)) {
-                    maxTemp = dataMap.getString(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+                    max = dataMap.getString(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
                 }
                 if (dataMap.containsKey(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)) {
-                    minTemp = dataMap.getString(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+                    min = dataMap.getString(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+                }
+                // A phone clock ahead of ours would otherwise make the weather look stale
+                long receivedAt = dataMap.containsKey(SunshineWearValues.SENT_AT)
+                        ? Math.min(dataMap.getLong(SunshineWearValues.SENT_AT),
+                                System.currentTimeMillis())
+                        : mWeatherReceivedAt;
+                boolean changed = receivedAt != mWeatherReceivedAt;
+                mWeatherReceivedAt = receivedAt;
+                // The same item comes back every time we connect, so most of the time nothing
+                // has changed and there's nothing to redraw
+                if (!TextUtils.equals(description, weatherDescription)
+                        || !TextUtils.equals(max, maxTemp) || !TextUtils.equals(min, minTemp)) {
+                    weatherDescription = description;
+                    maxTemp = max;
+                    minTemp = min;
+                    mRenderer.setWeather(weatherDescription, maxTemp, minTemp);
+                    invalidate();
+                    changed = true;
                 }
                 if (dataMap.containsKey(SunshineWearValues.WEATHER_IMAGE)) {
                     Asset weatherImageAsset = dataMap.getAsset(SunshineWearValues.WEATHER_IMAGE);
-                    BitmapWorkerTask task = new BitmapWorkerTask();
-                    task.execute(weatherImageAsset);
+                    if (!TextUtils.equals(weatherImageAsset.getDigest(), mWeatherImageDigest)) {
+                        mWeatherImageLoader.load(weatherImageAsset, onWeatherImageLoaded);
+                    }
+                }
+                // A new image is saved once it's decoded
+                if (changed) {
+                    saveSnapshot();
                 }
             }
         }
-        class BitmapWorkerTask extends AsyncTask<Asset, Void, Bitmap> {
-            private final WeakReference<SunshineWatchFace.Engine> engineReference;
-            public BitmapWorkerTask() {
-                engineReference = new WeakReference<>(Engine.this);
-            }
 
-            // Decode image in background.
-            @Override
-            protected Bitmap doInBackground(Asset... params) {
-                Asset asset = params[0];
-                return loadBitmapFromAsset(asset);
-            }
-
-            // Once complete, set bitmap safely
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-                if (engineReference != null && bitmap != null) {
-                    final SunshineWatchFace.Engine engine = engineReference.get();
-                    if (bitmap != null) {
-                        engine.setWeatherImage(bitmap);
-                    }
+        // Writes the weather as it is now to the snapshot, in the background
+        private void saveSnapshot() {
+            final WeatherSnapshot snapshot = new WeatherSnapshot(weatherDescription, maxTemp,
+                    minTemp, weatherImage, mWeatherImageDigest, mWeatherReceivedAt);
+            final Context context = getApplicationContext();
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    snapshot.save(context);
                 }
-            }
+            });
         }
-        //Needs to be run off of the main thread
-        public Bitmap loadBitmapFromAsset(Asset asset) {
-            if (asset == null) {
-                throw new IllegalArgumentException("Asset must be non-null");
-            }
-            ConnectionResult result =
-                    googleApiClient.blockingConnect(30000, TimeUnit.MILLISECONDS);
-            if (!result.isSuccess()) {
-                return null;
-            }
-            // convert asset into a file descriptor and block until it's ready
-            InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                    googleApiClient, asset).await().getInputStream();
-            googleApiClient.disconnect();
-
-            if (assetInputStream == null) {
-                Log.w("loadBitmapFromAsset", "Requested an unknown Asset.");
-                return null;
+
+        private final WeatherImageLoader.Callback onWeatherImageLoaded =
+                new WeatherImageLoader.Callback() {
+            @Override
+            public void onWeatherImageLoaded(Bitmap image, String digest) {
+                setWeatherImage(image, digest);
             }
-            // decode the stream into a bitmap
-            return BitmapFactory.decodeStream(assetInputStream);
-        }
+        };
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Draws H:MM or H:MM:SS without allocating: the time is written into a reused char array, and
+ * each character is drawn in a cell of a width measured once per text size.  Every digit gets
+ * the same cell, so the time doesn't shift sideways as the digits change.
+ *
+ * The time can also be drawn from a bitmap per glyph, prerendered a cell wide; see
+ * {@link AmbientRenderer}.
+ */
+final class TimeText {
+    // Every character the time is made of, in glyph index order
+    static final String GLYPHS = "0123456789:";
+    private static final int COLON = 10;
+
+    private final Paint mPaint;
+    // "11:59:59" is as long as it gets
+    private final char[] mChars = new char[8];
+    private final float[] mGlyphWidths = new float[GLYPHS.length()];
+    private float mDigitWidth;
+
+    TimeText(Paint paint) {
+        mPaint = paint;
+        measure();
+    }
+
+    /**
+     * Measures the glyphs again.  Call after changing the paint's text size or typeface.
+     */
+    void measure() {
+        mPaint.getTextWidths(GLYPHS, mGlyphWidths);
+        mDigitWidth = 0;
+        for (int i = 0; i < COLON; i++) {
+            mDigitWidth = Math.max(mDigitWidth, mGlyphWidths[i]);
+        }
+    }
+
+    /**
+     * @return the width of the cell the glyph is drawn in
+     */
+    float getCellWidth(int glyph) {
+        return COLON == glyph ? mGlyphWidths[COLON] : mDigitWidth;
+    }
+
+    /**
+     * @return where the glyph starts within its cell
+     */
+    float getGlyphOffset(int glyph) {
+        return COLON == glyph ? 0 : (mDigitWidth - mGlyphWidths[glyph]) / 2;
+    }
+
+    private static int glyphIndex(char c) {
+        return ':' == c ? COLON : c - '0';
+    }
+
+    /**
+     * Writes the time into the buffer.
+     *
+     * @param hour 0 to 11
+     * @return the number of characters written
+     */
+    int format(int hour, int minute, int second, boolean showSeconds) {
+        int count = 0;
+        if (hour >= 10) {
+            mChars[count++] = (char) ('0' + hour / 10);
+        }
+        mChars[count++] = (char) ('0' + hour % 10);
+        mChars[count++] = ':';
+        mChars[count++] = (char) ('0' + minute / 10);
+        mChars[count++] = (char) ('0' + minute % 10);
+        if (showSeconds) {
+            mChars[count++] = ':';
+            mChars[count++] = (char) ('0' + second / 10);
+            mChars[count++] = (char) ('0' + second % 10);
+        }
+        return count;
+    }
+
+    /**
+     * @return the characters last written by {@link #format(int, int, int, boolean)}
+     */
+    char[] getChars() {
+        return mChars;
+    }
+
+    /**
+     * Draws the time with its baseline at y, starting at x.
+     *
+     * @return the number of draw calls made
+     */
+    int draw(Canvas canvas, float x, float y, int hour, int minute, int second,
+             boolean showSeconds) {
+        int count = format(hour, minute, second, showSeconds);
+        for (int i = 0; i < count; i++) {
+            int glyph = glyphIndex(mChars[i]);
+            canvas.drawText(mChars, i, 1, x + getGlyphOffset(glyph), y, mPaint);
+            x += getCellWidth(glyph);
+        }
+        return count;
+    }
+
+    /**
+     * Draws H:MM from prerendered glyphs, with their tops at y, starting at x.
+     *
+     * @param glyphs a bitmap for each of {@link #GLYPHS}, as wide as its cell, with the glyph
+     *               placed within it as {@link #getGlyphOffset(int)} says
+     * @return the number of draw calls made
+     */
+    int drawGlyphs(Canvas canvas, float x, float y, Bitmap[] glyphs, Paint paint, int hour,
+                   int minute) {
+        int count = format(hour, minute, 0, false);
+        for (int i = 0; i < count; i++) {
+            int glyph = glyphIndex(mChars[i]);
+            canvas.drawBitmap(glyphs[glyph], x, y, paint);
+            x += getCellWidth(glyph);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face.  Anything that only changes with the weather, the insets or
+ * the mode is prepared when it changes, so drawing a frame allocates nothing and the watch
+ * doesn't wake the garbage collector once a second.
+ *
+ * In interactive mode only the time changes from one second to the next, so the background and
+ * the weather are drawn once into an offscreen layer, and each frame is that layer plus the
+ * time.  The watch face's surface doesn't keep the last frame, so the whole layer is drawn
+ * every time, but as a single bitmap.
+ *
+ * Ambient mode is drawn by an {@link AmbientRenderer}.
+ */
+final class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    // The weather line sits this far below the time, and the image below that
+    private static final float WEATHER_Y_OFFSET = 60;
+    private static final float IMAGE_X_OFFSET = 80;
+    private static final float IMAGE_Y_OFFSET = 80;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimeTextPaint;
+    private final Paint mWeatherTextPaint;
+    private final Paint mImagePaint;
+    // The weather image is drawn this big, whatever size it was decoded at
+    private final int mImageSize;
+    private final RectF mImageBounds = new RectF();
+    private final TimeText mTimeText;
+    private final AmbientRenderer mAmbientRenderer;
+    private final Calendar mCalendar = Calendar.getInstance();
+
+    private final String mSyncPending;
+    private final StringBuilder mWeatherLineBuilder = new StringBuilder();
+    // Description high/low, or null until there is weather to show
+    private String mWeatherLine;
+    private Bitmap mWeatherImage;
+
+    // The background and the weather, for interactive mode
+    private final Canvas mLayerCanvas = new Canvas();
+    private Bitmap mLayer;
+    private boolean mLayerValid;
+    private boolean mLayerEnabled = true;
+    private int mLastFrameDrawCalls;
+
+    private float mXOffset;
+    private float mYOffset;
+    private boolean mAmbient;
+
+    WatchFaceRenderer(Context context) {
+        mBackgroundPaint = new Paint();
+        //referenced http://stackoverflow.com/a/32149275/2169923
+        mBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.background));
+
+        int textColor = ContextCompat.getColor(context, R.color.digital_text);
+        mTimeTextPaint = createTextPaint(textColor, 0);
+        mWeatherTextPaint = createTextPaint(textColor,
+                context.getResources().getDimensionPixelSize(R.dimen.abc_text_size_small_material));
+        mImagePaint = new Paint();
+        mImagePaint.setFilterBitmap(true);
+        mImageSize = context.getResources().getDimensionPixelSize(R.dimen.weather_image_size);
+        mTimeText = new TimeText(mTimeTextPaint);
+        mAmbientRenderer = new AmbientRenderer(mTimeTextPaint, mWeatherTextPaint, mTimeText,
+                mImageSize);
+
+        mSyncPending = context.getString(R.string.sync_pending);
+        mAmbientRenderer.setWeatherLine(mSyncPending);
+    }
+
+    private static Paint createTextPaint(int textColor, float textSize) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        if (textSize != 0) {
+            paint.setTextSize(textSize);
+        }
+        return paint;
+    }
+
+    /**
+     * Loads the layout for a round or square watch.
+     */
+    void setRound(Resources resources, boolean isRound) {
+        mXOffset = resources.getDimension(isRound
+                ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
+        mYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
+        mTimeTextPaint.setTextSize(resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size));
+        mTimeText.measure();
+        mAmbientRenderer.invalidateTime();
+        mLayerValid = false;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+    }
+
+    /**
+     * Whether the display supports fewer bits for each color in ambient mode. When true, we
+     * disable anti-aliasing in ambient mode.
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mAmbientRenderer.setLowBit(lowBitAmbient);
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+    }
+
+    /**
+     * Sets the weather line.  Only called when the weather changes, so this is where its text
+     * is put together.
+     */
+    void setWeather(String description, String maxTemp, String minTemp) {
+        mLayerValid = false;
+        if (null == description) {
+            mWeatherLine = null;
+        } else {
+            mWeatherLineBuilder.setLength(0);
+            mWeatherLineBuilder.append(description).append(' ')
+                    .append(maxTemp).append('/').append(minTemp);
+            mWeatherLine = mWeatherLineBuilder.toString();
+        }
+        mAmbientRenderer.setWeatherLine(null != mWeatherLine ? mWeatherLine : mSyncPending);
+    }
+
+    void setWeatherImage(Bitmap weatherImage) {
+        mWeatherImage = weatherImage;
+        mAmbientRenderer.setWeatherImage(weatherImage);
+        mLayerValid = false;
+    }
+
+    /**
+     * Turns the interactive layer off, to compare with drawing everything every frame.
+     */
+    void setLayerEnabled(boolean layerEnabled) {
+        mLayerEnabled = layerEnabled;
+    }
+
+    /**
+     * @return how many draw calls the last frame took
+     */
+    int getLastFrameDrawCalls() {
+        return mLastFrameDrawCalls;
+    }
+
+    /**
+     * Lets go of the interactive layer and the ambient masks.
+     */
+    void release() {
+        mAmbientRenderer.release();
+        if (null != mLayer) {
+            mLayerCanvas.setBitmap(null);
+            mLayer.recycle();
+            mLayer = null;
+        }
+        mLayerValid = false;
+    }
+
+    /**
+     * Draws H:MM in ambient mode or H:MM:SS in interactive mode, with the weather underneath.
+     */
+    void draw(Canvas canvas, Rect bounds, long now) {
+        mCalendar.setTimeInMillis(now);
+        int hour = mCalendar.get(Calendar.HOUR);
+        int minute = mCalendar.get(Calendar.MINUTE);
+
+        int drawCalls;
+        if (mAmbient) {
+            drawCalls = mAmbientRenderer.drawTime(canvas, mXOffset, mYOffset, hour, minute)
+                    + mAmbientRenderer.drawWeatherLine(canvas, mXOffset,
+                            mYOffset + WEATHER_Y_OFFSET)
+                    + mAmbientRenderer.drawWeatherImage(canvas, mXOffset + IMAGE_X_OFFSET,
+                            mYOffset + IMAGE_Y_OFFSET);
+        } else {
+            if (!mLayerEnabled) {
+                drawCalls = drawBackground(canvas, bounds) + drawWeather(canvas);
+            } else {
+                if (!mLayerValid || mLayer.getWidth() != bounds.width()
+                        || mLayer.getHeight() != bounds.height()) {
+                    buildLayer(bounds);
+                }
+                canvas.drawBitmap(mLayer, 0, 0, null);
+                drawCalls = 1;
+            }
+            drawCalls += mTimeText.draw(canvas, mXOffset, mYOffset, hour, minute,
+                    mCalendar.get(Calendar.SECOND), true);
+        }
+        mLastFrameDrawCalls = drawCalls;
+    }
+
+    private void buildLayer(Rect bounds) {
+        if (null == mLayer || mLayer.getWidth() != bounds.width()
+                || mLayer.getHeight() != bounds.height()) {
+            if (null != mLayer) {
+                mLayerCanvas.setBitmap(null);
+                mLayer.recycle();
+            }
+            mLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            mLayerCanvas.setBitmap(mLayer);
+        }
+        drawBackground(mLayerCanvas, bounds);
+        drawWeather(mLayerCanvas);
+        mLayerValid = true;
+    }
+
+    private int drawBackground(Canvas canvas, Rect bounds) {
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        return 1;
+    }
+
+    private int drawWeather(Canvas canvas) {
+        canvas.drawText(null != mWeatherLine ? mWeatherLine : mSyncPending,
+                mXOffset, mYOffset + WEATHER_Y_OFFSET, mWeatherTextPaint);
+        if (null != mWeatherImage) {
+            float left = mXOffset + IMAGE_X_OFFSET;
+            float top = mYOffset + IMAGE_Y_OFFSET;
+            mImageBounds.set(left, top, left + mImageSize, top + mImageSize);
+            canvas.drawBitmap(mWeatherImage, null, mImageBounds, mImagePaint);
+            return 2;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the weather image assets the phone sends, one at a time on a single background
+ * thread, through a Google API client of its own so the watch face's connection is left alone.
+ *
+ * Images are decoded at the smallest scale that still covers weather_image_size, the size the
+ * watch face draws them at.  They go into a bitmap that's no longer shown where there is one,
+ * and are kept by asset digest, so going back to a condition seen recently doesn't decode
+ * anything.
+ */
+final class WeatherImageLoader {
+    private static final String LOG_TAG = WeatherImageLoader.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    // A few conditions, so the weather going back and forth is served from memory
+    private static final int CACHE_SIZE = 4;
+    private static final int POOL_SIZE = 2;
+
+    interface Callback {
+        /**
+         * Called on the main thread with a decoded image.
+         */
+        void onWeatherImageLoaded(Bitmap image, String digest);
+    }
+
+    private final int mTargetSize;
+    private final GoogleApiClient mGoogleApiClient;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, Bitmap> mCache = new LruCache<String, Bitmap>(CACHE_SIZE) {
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                                    Bitmap newValue) {
+            if (oldValue != newValue) {
+                offerToPool(oldValue);
+            }
+        }
+    };
+    // Decoded images that are neither cached nor shown, to decode the next one into.
+    // Guarded by this.
+    private final ArrayDeque<Bitmap> mPool = new ArrayDeque<>();
+    // The image last handed out, which may be on screen.  Guarded by this.
+    private Bitmap mShown;
+
+    // Main thread only
+    private String mPendingDigest;
+    // Set on the main thread, read on both
+    private volatile boolean mReleased;
+
+    /**
+     * @param context used for the resources and the API client
+     */
+    WeatherImageLoader(Context context) {
+        mTargetSize = context.getResources().getDimensionPixelSize(R.dimen.weather_image_size);
+        mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    /**
+     * Loads the asset's image and hands it to the callback, straight away if it's cached.  Call
+     * from the main thread.  Asking for the asset that's already being decoded does nothing.
+     */
+    void load(final Asset asset, final Callback callback) {
+        final String digest = asset.getDigest();
+        Bitmap cached = mCache.get(digest);
+        if (null != cached) {
+            deliver(cached, digest, callback);
+            return;
+        }
+        if (TextUtils.equals(digest, mPendingDigest)) {
+            return;
+        }
+        mPendingDigest = digest;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap image = decode(asset);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (TextUtils.equals(digest, mPendingDigest)) {
+                            mPendingDigest = null;
+                        }
+                        if (null == image) {
+                            return;
+                        }
+                        if (mReleased) {
+                            image.recycle();
+                            return;
+                        }
+                        mCache.put(digest, image);
+                        deliver(image, digest, callback);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops decoding and disconnects.  Images already handed out stay usable.
+     */
+    void release() {
+        mReleased = true;
+        mCache.evictAll();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mGoogleApiClient.disconnect();
+                synchronized (WeatherImageLoader.this) {
+                    for (Bitmap bitmap : mPool) {
+                        bitmap.recycle();
+                    }
+                    mPool.clear();
+                }
+            }
+        });
+        mExecutor.shutdown();
+    }
+
+    private void deliver(Bitmap image, String digest, Callback callback) {
+        Bitmap previous;
+        synchronized (this) {
+            previous = mShown;
+            mShown = image;
+        }
+        if (null != previous && previous != image && !mCache.snapshot().containsValue(previous)) {
+            offerToPool(previous);
+        }
+        callback.onWeatherImageLoaded(image, digest);
+    }
+
+    private synchronized void offerToPool(Bitmap bitmap) {
+        if (bitmap == mShown || mPool.contains(bitmap)) {
+            return;
+        }
+        if (mReleased || mPool.size() >= POOL_SIZE) {
+            bitmap.recycle();
+        } else {
+            mPool.add(bitmap);
+        }
+    }
+
+    // The smallest pooled bitmap big enough to hold the decoded image, or null
+    private synchronized Bitmap takeFromPool(int width, int height) {
+        int byteCount = width * height * 4;
+        Bitmap best = null;
+        for (Bitmap bitmap : mPool) {
+            if (bitmap.getAllocationByteCount() >= byteCount && (null == best
+                    || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (null != best) {
+            mPool.remove(best);
+        }
+        return best;
+    }
+
+    // Runs on the loader's thread
+    private Bitmap decode(Asset asset) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        ConnectionResult result =
+                mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.isSuccess()) {
+            Log.w(LOG_TAG, "Unable to connect: " + result);
+            return null;
+        }
+        InputStream in = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset)
+                .await().getInputStream();
+        if (null == in) {
+            Log.w(LOG_TAG, "Requested an unknown Asset.");
+            return null;
+        }
+        byte[] data;
+        try {
+            data = readFully(in);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read the asset", e);
+            return null;
+        }
+        Bitmap image = decode(data);
+        Log.d(LOG_TAG, "Weather image decoded in "
+                + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + "us");
+        return image;
+    }
+
+    /**
+     * Decodes the image at the smallest power of two scale that's still at least the size it's
+     * drawn at, into a pooled bitmap if one is big enough.
+     *
+     * @return the image, or null if it couldn't be decoded
+     */
+    Bitmap decode(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(LOG_TAG, "Unable to decode the image");
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight, mTargetSize);
+        options.inMutable = true;
+        options.inBitmap = takeFromPool(divideRoundingUp(options.outWidth, options.inSampleSize),
+                divideRoundingUp(options.outHeight, options.inSampleSize));
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            if (null == options.inBitmap) {
+                throw e;
+            }
+            // The pooled bitmap couldn't be decoded into after all
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * @return the largest power of two the image can be divided by and still be at least the
+     * target size both ways
+     */
+    static int sampleSizeFor(int width, int height, int targetSize) {
+        int sampleSize = 1;
+        if (targetSize <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetSize && height / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
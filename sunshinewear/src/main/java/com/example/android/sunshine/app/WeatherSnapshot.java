@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last weather the watch was sent, kept on the watch so the face can show it straight
+ * away after a restart instead of "Sync Pending".
+ *
+ * It is stored as one small file: the text fields, then the weather image's pixels exactly as
+ * they are held in memory, so loading it is a single read with nothing to decode or scale.
+ */
+final class WeatherSnapshot {
+    private static final String LOG_TAG = WeatherSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "weather_snapshot";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Bump this if the layout of the file changes; older files are then ignored.
+    private static final int VERSION = 1;
+
+    // The phone syncs every three hours, so anything older than that is worth asking for again
+    private static final long STALE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+    final String description;
+    final String maxTemp;
+    final String minTemp;
+    // Null if there isn't one
+    final Bitmap image;
+    // The digest of the asset the image was decoded from, so it isn't decoded again
+    final String imageDigest;
+    // When the phone sent the weather, in milliseconds since the epoch
+    final long receivedAt;
+
+    WeatherSnapshot(String description, String maxTemp, String minTemp, Bitmap image,
+                    String imageDigest, long receivedAt) {
+        this.description = description;
+        this.maxTemp = maxTemp;
+        this.minTemp = minTemp;
+        this.image = image;
+        this.imageDigest = imageDigest;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * @return true if the phone has probably synced newer weather since it sent this
+     */
+    boolean isStale(long now) {
+        return now - receivedAt >= STALE_AFTER_MILLIS || now < receivedAt;
+    }
+
+    /**
+     * @return the stored snapshot, or null if there isn't a usable one
+     */
+    static WeatherSnapshot load(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            long receivedAt = in.readLong();
+            String description = readString(in);
+            String maxTemp = readString(in);
+            String minTemp = readString(in);
+
+            String imageDigest = readString(in);
+            Bitmap image = null;
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width > 0 && height > 0) {
+                byte[] pixels = new byte[width * height * 4];
+                in.readFully(pixels);
+                image = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                image.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+            }
+            return new WeatherSnapshot(description, maxTemp, minTemp, image,
+                    null == image ? null : imageDigest, receivedAt);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Unable to read the weather snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces the stored snapshot with this one.  This writes a file, so call it from a
+     * background thread.
+     */
+    void save(Context context) {
+        File directory = context.getFilesDir();
+        File temp = new File(directory, FILE_NAME + TEMP_SUFFIX);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            try {
+                out.writeInt(VERSION);
+                out.writeLong(receivedAt);
+                writeString(out, description);
+                writeString(out, maxTemp);
+                writeString(out, minTemp);
+                writeString(out, imageDigest);
+
+                Bitmap pixels = null == image || Bitmap.Config.ARGB_8888 == image.getConfig()
+                        ? image : image.copy(Bitmap.Config.ARGB_8888, false);
+                if (null == pixels) {
+                    out.writeInt(0);
+                    out.writeInt(0);
+                } else {
+                    ByteBuffer buffer = ByteBuffer.allocate(pixels.getByteCount());
+                    pixels.copyPixelsToBuffer(buffer);
+                    out.writeInt(pixels.getWidth());
+                    out.writeInt(pixels.getHeight());
+                    out.write(buffer.array());
+                    if (pixels != image) {
+                        pixels.recycle();
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(new File(directory, FILE_NAME))) {
+                throw new IOException("Unable to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to write the weather snapshot", e);
+            temp.delete();
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (null != in) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing useful to do.
+            }
+        }
+    }
+}